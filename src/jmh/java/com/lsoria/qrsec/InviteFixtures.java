@@ -0,0 +1,136 @@
+package com.lsoria.qrsec;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.lsoria.qrsec.domain.model.Address;
+import com.lsoria.qrsec.domain.model.Guest;
+import com.lsoria.qrsec.domain.model.House;
+import com.lsoria.qrsec.domain.model.Invite;
+import com.lsoria.qrsec.domain.model.Location;
+import com.lsoria.qrsec.domain.model.Role;
+import com.lsoria.qrsec.domain.model.User;
+
+/*
+    Generated invites for the benchmarks, shaped like the ones in the gate:
+    - a few owners sharing the neighborhood's addresses
+    - random days (some invites without days, valid every day) and up to maxRanges hour ranges
+    - up to maxGuests guests, each one owned by the invite's owner
+    The seed is fixed, so two calls with the same arguments generate equal invites (as new instances).
+ */
+public final class InviteFixtures {
+
+    public static final LocalDateTime CREATED_AT = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    private static final long SEED = 42L;
+    private static final int OWNERS = 200;
+
+    private InviteFixtures() {
+    }
+
+    public static List<Invite> generate(int count, int maxGuests, int maxRanges) {
+
+        Random random = new Random(SEED);
+
+        List<User> owners = new ArrayList<>(OWNERS);
+        for (int o = 0; o < OWNERS; o++) {
+            Address address = new Address(String.format("address-%04d", o), "Street " + (o % 20), 100 + o, new House(Character.toString('A' + o % 10), o), new Location("Point", List.of(-68.84 + o * 0.0001, -32.89)));
+            owners.add(new User(String.format("user-%04d", o), "owner" + o + "@qrsec.com", new HashSet<>(Set.of(new Role(Role.OWNER))), "Owner", "Number " + o, Integer.toString(30000000 + o), address, "261555" + o, true));
+        }
+
+        List<Invite> invites = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            User owner = owners.get(random.nextInt(OWNERS));
+
+            Set<Guest> guests = new LinkedHashSet<>();
+            int guestCount = 1 + random.nextInt(maxGuests);
+            for (int g = 0; g < guestCount; g++) {
+                guests.add(new Guest(String.format("guest-%08d-%03d", i, g), "Guest", "Number " + g, Integer.toString(40000000 + random.nextInt(10000000)), "261" + random.nextInt(10000000), new HashSet<>(Set.of(owner))));
+            }
+
+            Invite invite = new Invite();
+            invite.setId(String.format("invite-%08d", i));
+            invite.setDescription("Invite " + i);
+            invite.setOwner(owner);
+            invite.setGuests(guests);
+            invite.setDays(days(random));
+            invite.setHours(hours(random, maxRanges));
+            invite.setMaxTimeAllowed(30 + random.nextInt(240));
+            invite.setNumberOfPassengers(1 + random.nextInt(4));
+            invite.setDropsTrueGuest(random.nextBoolean());
+            invite.setCreatedAt(CREATED_AT);
+            invite.setLastModifiedAt(CREATED_AT);
+            if (random.nextInt(10) == 0) {
+                invite.setArrivalTime(CREATED_AT.plusDays(1));
+                invite.setDepartureTime(CREATED_AT.plusDays(1).plusHours(2));
+            }
+            invite.setEnabled(random.nextInt(20) != 0);
+
+            invites.add(invite);
+        }
+
+        return invites;
+
+    }
+
+    // ISO offset timestamps spread over a week, the format the validate endpoint receives
+    public static List<String> timestamps(int count) {
+
+        Random random = new Random(SEED);
+        List<String> timestamps = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            LocalDateTime timestamp = CREATED_AT.plusDays(7 + random.nextInt(7)).plusMinutes(random.nextInt(24 * 60)).plusSeconds(random.nextInt(60));
+            timestamps.add(timestamp + "Z");
+        }
+
+        return timestamps;
+
+    }
+
+    private static Set<String> days(Random random) {
+
+        Set<String> days = new HashSet<>();
+        // One invite in ten has no days, it is valid every day
+        if (random.nextInt(10) == 0) {
+            return days;
+        }
+        for (int day = 0; day <= 6; day++) {
+            if (random.nextBoolean()) {
+                days.add(Integer.toString(day));
+            }
+        }
+
+        return days;
+
+    }
+
+    // Non overlapping ranges, in random order as users send them
+    private static List<List<String>> hours(Random random, int maxRanges) {
+
+        int ranges = random.nextInt(maxRanges + 1);
+        List<List<String>> hours = new ArrayList<>(ranges);
+        int slot = 24 * 60 / Math.max(ranges, 1);
+        for (int r = 0; r < ranges; r++) {
+            int start = r * slot + random.nextInt(Math.max(slot / 2, 1));
+            int end = Math.min(start + 1 + random.nextInt(Math.max(slot / 2, 1)), 24 * 60 - 1);
+            hours.add(List.of(time(start), time(end)));
+        }
+        Collections.shuffle(hours, random);
+
+        return hours;
+
+    }
+
+    private static String time(int minuteOfDay) {
+
+        return String.format("%02d:%02d", minuteOfDay / 60, minuteOfDay % 60);
+
+    }
+
+}
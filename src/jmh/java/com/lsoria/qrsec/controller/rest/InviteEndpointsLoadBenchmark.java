@@ -0,0 +1,140 @@
+package com.lsoria.qrsec.controller.rest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lsoria.qrsec.QrsecApplication;
+import com.lsoria.qrsec.domain.http.Headers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+
+/*
+    Morning rush at the gate: many concurrent clients listing and validating invites, with the web layer on platform
+    threads (Tomcat's pool, 200 threads by default) and on virtual threads.
+    Starts the application in process, so it needs the same configuration as a normal run (see ENVIRONMENT.md) and a
+    MongoDB with data, plus -Dqrsec.benchmark.email=<user> for a user with invites (a GUARD to validate).
+    SampleTime reports the p99 latency, Throughput the requests per second.
+    Left out of ./gradlew jmh, run it with: ./gradlew jmh -PloadBenchmark -Dqrsec.benchmark.email=<user>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(256)
+public class InviteEndpointsLoadBenchmark {
+
+    @Param({"false", "true"})
+    String virtualThreads;
+
+    ConfigurableApplicationContext context;
+    HttpClient client;
+
+    String email;
+    String authorization;
+    URI invitesUri;
+    URI validateUri;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+
+        this.context = new SpringApplicationBuilder(QrsecApplication.class)
+                .properties(
+                        "spring.threads.virtual.enabled=" + this.virtualThreads,
+                        "server.port=0",
+                        "logging.level.root=WARN"
+                )
+                .run();
+
+        Environment environment = this.context.getEnvironment();
+        String baseUrl = "http://localhost:" + environment.getRequiredProperty("local.server.port") + environment.getRequiredProperty("api.path");
+        String credentials = environment.getRequiredProperty("spring.security.user.name") + ":" + environment.getRequiredProperty("spring.security.user.password");
+
+        this.email = System.getProperty("qrsec.benchmark.email");
+        if (this.email == null) {
+            throw new IllegalStateException("-Dqrsec.benchmark.email is required");
+        }
+        this.authorization = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+        this.invitesUri = URI.create(baseUrl + environment.getRequiredProperty("api.path.invites") + "?limit=20");
+
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        // Validate the first invite the user can see
+        HttpResponse<String> invites = send(request(this.invitesUri).build());
+        JsonNode first = new ObjectMapper().readTree(invites.body()).path(0);
+        if (first.isMissingNode()) {
+            throw new IllegalStateException("User " + this.email + " has no invites to validate");
+        }
+        this.validateUri = URI.create(baseUrl + environment.getRequiredProperty("api.path.invites.validate") + "/" + first.path("id").asText());
+
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+
+        this.context.close();
+
+    }
+
+    @Benchmark
+    public int listInvites() throws Exception {
+
+        return send(request(this.invitesUri).build()).statusCode();
+
+    }
+
+    @Benchmark
+    public int validateInvite() throws Exception {
+
+        return send(request(this.validateUri)
+                .header("X-Client-Timestamp", OffsetDateTime.now(ZoneOffset.UTC).toString())
+                .build()
+        ).statusCode();
+
+    }
+
+    private HttpRequest.Builder request(URI uri) {
+
+        return HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofSeconds(30))
+                .header("Authorization", this.authorization)
+                .header(Headers.EMAIL, this.email)
+                .GET();
+
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws Exception {
+
+        HttpResponse<String> response = this.client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() >= 500) {
+            throw new IllegalStateException(request.uri() + " answered " + response.statusCode());
+        }
+
+        return response;
+
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.lsoria.qrsec.domain.dto.mapper;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.lsoria.qrsec.InviteFixtures;
+import com.lsoria.qrsec.domain.model.Invite;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+    inviteToInviteDTO as the listings call it, once per returned invite. The guests set is copied by the mapper,
+    so the cost grows with the number of guests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InviteMapperBenchmark {
+
+    private static final int BATCH = 1024;
+
+    @Param({"5", "50"})
+    int maxGuests;
+
+    InviteMapper inviteMapper;
+
+    Invite[] invites;
+
+    @Setup
+    public void setUp() {
+
+        this.inviteMapper = new InviteMapperImpl();
+
+        List<Invite> generated = InviteFixtures.generate(BATCH, this.maxGuests, 8);
+        this.invites = generated.toArray(new Invite[0]);
+
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void inviteToInviteDTO(Blackhole blackhole) {
+
+        for (Invite invite : this.invites) {
+            blackhole.consume(this.inviteMapper.inviteToInviteDTO(invite));
+        }
+
+    }
+
+}
@@ -0,0 +1,211 @@
+package com.lsoria.qrsec.domain.model;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import com.lsoria.qrsec.InviteFixtures;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+    Union of the per-role lists of a user that is ADMIN and OWNER: every owner's invite is also in the admin list,
+    as a different instance (each role read with its own query). Invites are now listed with one $or query,
+    the guest listing still merges its per-role pages with CursorPage.union.
+    - deepHashSetUnion: HashSet keyed by the structural equality Lombok's @Data used to generate for Invite
+    - idHashSetUnion: HashSet with the id based equality
+    - idKeyedUnion: TreeMap keyed by id, what CursorPage.union does
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EntityMergeBenchmark {
+
+    @Param({"10000", "50000"})
+    int invites;
+
+    @Param({"20"})
+    int guestsPerInvite;
+
+    List<Invite> adminInvites;
+    List<Invite> ownerInvites;
+
+    @Setup
+    public void setUp() {
+
+        this.adminInvites = InviteFixtures.generate(this.invites, this.guestsPerInvite, 8);
+        // Every other invite belongs to the owner, loaded again as new instances
+        List<Invite> copies = InviteFixtures.generate(this.invites, this.guestsPerInvite, 8);
+        this.ownerInvites = new ArrayList<>();
+        for (int i = 0; i < copies.size(); i += 2) {
+            this.ownerInvites.add(copies.get(i));
+        }
+
+    }
+
+    @Benchmark
+    public int deepHashSetUnion() {
+
+        Set<DeepInvite> union = new HashSet<>();
+        for (Invite invite : this.adminInvites) {
+            union.add(new DeepInvite(invite));
+        }
+        for (Invite invite : this.ownerInvites) {
+            union.add(new DeepInvite(invite));
+        }
+
+        return union.size();
+
+    }
+
+    @Benchmark
+    public int idHashSetUnion() {
+
+        Set<Invite> union = new HashSet<>(this.adminInvites);
+        union.addAll(this.ownerInvites);
+
+        return union.size();
+
+    }
+
+    @Benchmark
+    public int idKeyedUnion() {
+
+        TreeMap<String, Invite> union = new TreeMap<>();
+        for (Invite invite : this.adminInvites) {
+            union.putIfAbsent(invite.getId(), invite);
+        }
+        for (Invite invite : this.ownerInvites) {
+            union.putIfAbsent(invite.getId(), invite);
+        }
+
+        return union.size();
+
+    }
+
+    // Same fields, in the same order, that the Lombok generated equals/hashCode used to walk
+    record DeepInvite(Invite invite) {
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof DeepInvite deepInvite)) {
+                return false;
+            }
+            Invite a = this.invite;
+            Invite b = deepInvite.invite;
+            return Objects.equals(a.getId(), b.getId())
+                    && Objects.equals(a.getDescription(), b.getDescription())
+                    && equalUsers(a.getOwner(), b.getOwner())
+                    && equalGuests(a.getGuests(), b.getGuests())
+                    && Objects.equals(a.getDays(), b.getDays())
+                    && Objects.equals(a.getHours(), b.getHours())
+                    && Objects.equals(a.getMaxTimeAllowed(), b.getMaxTimeAllowed())
+                    && Objects.equals(a.getNumberOfPassengers(), b.getNumberOfPassengers())
+                    && Objects.equals(a.getDropsTrueGuest(), b.getDropsTrueGuest())
+                    && Objects.equals(a.getArrivalTime(), b.getArrivalTime())
+                    && Objects.equals(a.getDepartureTime(), b.getDepartureTime())
+                    && Objects.equals(a.getCreatedAt(), b.getCreatedAt())
+                    && Objects.equals(a.getLastModifiedAt(), b.getLastModifiedAt())
+                    && Objects.equals(a.getEnabled(), b.getEnabled());
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 1;
+            result = result * 59 + Objects.hashCode(this.invite.getId());
+            result = result * 59 + Objects.hashCode(this.invite.getDescription());
+            result = result * 59 + hashUser(this.invite.getOwner());
+            int guests = 0;
+            for (Guest guest : this.invite.getGuests()) {
+                guests += hashGuest(guest);
+            }
+            result = result * 59 + guests;
+            result = result * 59 + Objects.hashCode(this.invite.getDays());
+            result = result * 59 + Objects.hashCode(this.invite.getHours());
+            result = result * 59 + Objects.hash(this.invite.getMaxTimeAllowed(), this.invite.getNumberOfPassengers(), this.invite.getDropsTrueGuest());
+            result = result * 59 + Objects.hash(this.invite.getArrivalTime(), this.invite.getDepartureTime(), this.invite.getCreatedAt(), this.invite.getLastModifiedAt());
+            return result * 59 + Objects.hashCode(this.invite.getEnabled());
+        }
+
+        private static boolean equalGuests(Set<Guest> a, Set<Guest> b) {
+            if (a.size() != b.size()) {
+                return false;
+            }
+            Iterator<Guest> other = b.iterator();
+            for (Guest guest : a) {
+                Guest otherGuest = other.next();
+                if (hashGuest(guest) != hashGuest(otherGuest)
+                        || !Objects.equals(guest.getId(), otherGuest.getId())
+                        || !Objects.equals(guest.getFirstName(), otherGuest.getFirstName())
+                        || !Objects.equals(guest.getLastName(), otherGuest.getLastName())
+                        || !Objects.equals(guest.getDni(), otherGuest.getDni())
+                        || !Objects.equals(guest.getPhone(), otherGuest.getPhone())
+                        || !equalOwners(guest.getOwners(), otherGuest.getOwners())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean equalOwners(Set<User> a, Set<User> b) {
+            if (a.size() != b.size()) {
+                return false;
+            }
+            Iterator<User> other = b.iterator();
+            for (User user : a) {
+                if (!equalUsers(user, other.next())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean equalUsers(User a, User b) {
+            return Objects.equals(a.getId(), b.getId())
+                    && Objects.equals(a.getUsername(), b.getUsername())
+                    && Objects.equals(a.getAuthorities(), b.getAuthorities())
+                    && Objects.equals(a.getFirstName(), b.getFirstName())
+                    && Objects.equals(a.getLastName(), b.getLastName())
+                    && Objects.equals(a.getDni(), b.getDni())
+                    && equalAddresses(a.getAddress(), b.getAddress())
+                    && Objects.equals(a.getPhone(), b.getPhone())
+                    && Objects.equals(a.getEnabled(), b.getEnabled());
+        }
+
+        private static boolean equalAddresses(Address a, Address b) {
+            return Objects.equals(a.getId(), b.getId())
+                    && Objects.equals(a.getStreet(), b.getStreet())
+                    && Objects.equals(a.getNumber(), b.getNumber())
+                    && Objects.equals(a.getHouse(), b.getHouse())
+                    && Objects.equals(a.getLocation(), b.getLocation());
+        }
+
+        private static int hashGuest(Guest guest) {
+            int owners = 0;
+            for (User owner : guest.getOwners()) {
+                owners += hashUser(owner);
+            }
+            return Objects.hash(guest.getId(), guest.getFirstName(), guest.getLastName(), guest.getDni(), guest.getPhone(), owners);
+        }
+
+        private static int hashUser(User user) {
+            Address address = user.getAddress();
+            int addressHash = Objects.hash(address.getId(), address.getStreet(), address.getNumber(), address.getHouse(), address.getLocation());
+            return Objects.hash(user.getId(), user.getUsername(), user.getAuthorities(), user.getFirstName(), user.getLastName(), user.getDni(), addressHash, user.getPhone(), user.getEnabled());
+        }
+
+    }
+
+}
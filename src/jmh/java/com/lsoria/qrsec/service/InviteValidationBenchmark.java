@@ -0,0 +1,80 @@
+package com.lsoria.qrsec.service;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.lsoria.qrsec.InviteFixtures;
+import com.lsoria.qrsec.domain.model.Invite;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+    The checks the gate runs for every scanned QR: inviteIsValid (timestamp parsing, day and hours) and validToday alone.
+    Each invocation validates BATCH invite/timestamp pairs, results are per pair.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InviteValidationBenchmark {
+
+    private static final int BATCH = 1024;
+
+    @Param({"1", "8", "24"})
+    int maxRanges;
+
+    InviteService inviteService;
+
+    Invite[] invites;
+    String[] timestamps;
+    LocalDateTime[] localTimestamps;
+
+    @Setup
+    public void setUp() {
+
+        // inviteIsValid and validToday only look at the invite, no repository is needed
+        this.inviteService = new InviteService();
+
+        List<Invite> generated = InviteFixtures.generate(BATCH, 20, this.maxRanges);
+        List<String> generatedTimestamps = InviteFixtures.timestamps(BATCH);
+
+        this.invites = generated.toArray(new Invite[0]);
+        this.timestamps = generatedTimestamps.toArray(new String[0]);
+        this.localTimestamps = new LocalDateTime[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            this.localTimestamps[i] = LocalDateTime.parse(this.timestamps[i], DateTimeFormatter.ISO_DATE_TIME);
+        }
+
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void inviteIsValid(Blackhole blackhole) throws Exception {
+
+        for (int i = 0; i < BATCH; i++) {
+            blackhole.consume(this.inviteService.inviteIsValid(this.invites[i], this.timestamps[i]));
+        }
+
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void validToday(Blackhole blackhole) {
+
+        for (int i = 0; i < BATCH; i++) {
+            blackhole.consume(this.inviteService.validToday(this.localTimestamps[i], this.invites[i].getSchedule()));
+        }
+
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.lsoria.qrsec.config;
+
+import java.time.Duration;
+
+import com.lsoria.qrsec.service.cache.RequestUserCache;
+import com.lsoria.qrsec.service.cache.UserCache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+    Spring Boot already times every request (http.server.requests, tagged by uri, method, status, outcome and exception),
+    every repository method (spring.data.repository.invocations, tagged by repository, method and state) and every
+    Mongo command sent by the driver (mongodb.driver.commands, tagged by command, collection and status).
+    This adds histograms to those timers, so latency percentiles can be computed in Prometheus, and the User caches.
+ */
+@Configuration
+public class MetricsConfig {
+
+    private static final String[] HISTOGRAM_METERS = {
+            "http.server.requests",
+            "spring.data.repository.invocations",
+            "mongodb.driver.commands"
+    };
+
+    @Bean
+    public MeterFilter latencyHistogramsMeterFilter(
+            @Value("${qrsec.metrics.histograms.enabled:true}") boolean enabled,
+            @Value("${qrsec.metrics.histograms.maximum-expected-value:10s}") Duration maximumExpectedValue
+    ) {
+
+        return new MeterFilter() {
+
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+
+                if (!enabled || !isHistogramMeter(id.getName())) {
+                    return config;
+                }
+
+                return DistributionStatisticConfig.builder()
+                        .percentilesHistogram(true)
+                        .minimumExpectedValue((double) Duration.ofMillis(1).toNanos())
+                        .maximumExpectedValue((double) maximumExpectedValue.toNanos())
+                        .build()
+                        .merge(config);
+
+            }
+
+        };
+
+    }
+
+    @Bean
+    public MeterBinder userCacheMetrics(UserCache userCache, RequestUserCache requestUserCache) {
+
+        return registry -> {
+
+            CaffeineCacheMetrics.monitor(registry, userCache.getNativeCache(), "users");
+
+            FunctionCounter.builder("qrsec.users.request.lookups", requestUserCache, RequestUserCache::getTotalLookups)
+                    .description("Users looked up past the per request cache")
+                    .register(registry);
+            FunctionCounter.builder("qrsec.users.request.hits", requestUserCache, RequestUserCache::getTotalHits)
+                    .description("Users served by the per request cache")
+                    .register(registry);
+
+        };
+
+    }
+
+    private static boolean isHistogramMeter(String name) {
+
+        for (String meter : HISTOGRAM_METERS) {
+            if (meter.equals(name)) {
+                return true;
+            }
+        }
+
+        return false;
+
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.lsoria.qrsec.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class PaginationConfig {
+
+    @Value("${api.pagination.default-limit:100}")
+    private int defaultLimit;
+
+    @Value("${api.pagination.max-limit:500}")
+    private int maxLimit;
+
+    // Page size to use for the requested limit: the default one when missing, never above the max one
+    public int limit(Integer requestedLimit) {
+
+        if (requestedLimit == null) {
+            return Math.min(this.defaultLimit, this.maxLimit);
+        }
+
+        return Math.max(1, Math.min(requestedLimit, this.maxLimit));
+
+    }
+
+    public int getMaxLimit() {
+        return this.maxLimit;
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.lsoria.qrsec.config;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+/*
+    With virtual threads enabled (spring.threads.virtual.enabled=true) a virtual thread that blocks while holding a monitor
+    (synchronized) or inside native code pins its carrier thread, and the carriers are as many as CPUs.
+    Listens to JFR's jdk.VirtualThreadPinned events in process and reports them:
+    - qrsec.virtualthreads.pinned timer, tagged by the frame that blocked
+    - a warning the first time a frame pins, debug logs afterwards so the rush hour does not flood the log
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+@Slf4j
+public class VirtualThreadPinningMonitor implements SmartLifecycle {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int LOGGED_FRAMES = 8;
+
+    private final MeterRegistry meterRegistry;
+    private final Duration threshold;
+    private final Set<String> reportedFrames = ConcurrentHashMap.newKeySet();
+
+    private RecordingStream recordingStream;
+
+    public VirtualThreadPinningMonitor(
+            MeterRegistry meterRegistry,
+            @Value("${qrsec.virtual-threads.pinning-threshold:20ms}") Duration threshold
+    ) {
+        this.meterRegistry = meterRegistry;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public synchronized void start() {
+
+        if (this.recordingStream != null) {
+            return;
+        }
+
+        RecordingStream stream = new RecordingStream();
+        stream.enable(PINNED_EVENT).withThreshold(this.threshold).withStackTrace();
+        stream.onEvent(PINNED_EVENT, this::onPinned);
+        stream.startAsync();
+        this.recordingStream = stream;
+
+        log.info("Reporting virtual threads pinned for more than {}", this.threshold);
+
+    }
+
+    @Override
+    public synchronized void stop() {
+
+        if (this.recordingStream != null) {
+            this.recordingStream.close();
+            this.recordingStream = null;
+        }
+
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+
+        return this.recordingStream != null;
+
+    }
+
+    private void onPinned(RecordedEvent event) {
+
+        List<RecordedFrame> frames = frames(event.getStackTrace());
+        String site = frames.isEmpty() ? "unknown" : frame(frames.get(0));
+
+        Timer.builder("qrsec.virtualthreads.pinned")
+                .description("Time virtual threads kept their carrier pinned")
+                .tag("frame", site)
+                .register(this.meterRegistry)
+                .record(event.getDuration());
+
+        if (this.reportedFrames.add(site)) {
+            log.warn("Virtual thread pinned for {} ms at {}", event.getDuration().toMillis(), stack(frames));
+        } else if (log.isDebugEnabled()) {
+            log.debug("Virtual thread pinned for {} ms at {}", event.getDuration().toMillis(), site);
+        }
+
+    }
+
+    private static List<RecordedFrame> frames(RecordedStackTrace stackTrace) {
+
+        if (stackTrace == null) {
+            return List.of();
+        }
+
+        return stackTrace.getFrames().stream()
+                .filter(RecordedFrame::isJavaFrame)
+                .toList();
+
+    }
+
+    private static String stack(List<RecordedFrame> frames) {
+
+        StringBuilder stack = new StringBuilder();
+        for (int i = 0; i < Math.min(frames.size(), LOGGED_FRAMES); i++) {
+            stack.append(System.lineSeparator()).append("\tat ").append(frame(frames.get(i)));
+        }
+
+        return stack.toString();
+
+    }
+
+    private static String frame(RecordedFrame frame) {
+
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+
+    }
+
+}
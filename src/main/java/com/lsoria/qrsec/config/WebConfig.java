@@ -1,7 +1,12 @@
 package com.lsoria.qrsec.config;
 
 import java.util.Arrays;
+import java.util.List;
 
+import com.lsoria.qrsec.controller.interceptor.UserLookupInterceptor;
+import com.lsoria.qrsec.domain.http.Headers;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -9,6 +14,7 @@ import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration
@@ -30,6 +36,9 @@ public class WebConfig implements WebMvcConfigurer {
     @Value("${cors.allow-credentials}")
     private boolean allowCredentials;
 
+    @Autowired
+    private UserLookupInterceptor userLookupInterceptor;
+
     @Bean
     public CorsConfigurationSource corsConfigurationSource() {
 
@@ -38,6 +47,7 @@ public class WebConfig implements WebMvcConfigurer {
         corsConfiguration.setAllowedMethods(Arrays.asList(allowedMethods.split(",")));
         corsConfiguration.setAllowCredentials(this.allowCredentials);
         corsConfiguration.setAllowedHeaders(Arrays.asList(allowedHeaders.split(",")));
+        corsConfiguration.setExposedHeaders(List.of(Headers.NEXT_CURSOR));
 
         final UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration(this.path+"/**", corsConfiguration);
@@ -46,4 +56,11 @@ public class WebConfig implements WebMvcConfigurer {
 
     }
 
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+
+        registry.addInterceptor(this.userLookupInterceptor).addPathPatterns(this.path + "/**");
+
+    }
+
 }
@@ -0,0 +1,26 @@
+package com.lsoria.qrsec.controller.interceptor;
+
+import com.lsoria.qrsec.service.cache.RequestUserCache;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+@Slf4j
+@Component
+public class UserLookupInterceptor implements HandlerInterceptor {
+
+    @Autowired
+    RequestUserCache requestUserCache;
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception exception) {
+
+        log.debug("{} {} resolved its users with {} lookup(s).", request.getMethod(), request.getRequestURI(), requestUserCache.getLookupsForCurrentRequest());
+
+    }
+
+}
@@ -5,8 +5,10 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+import com.lsoria.qrsec.config.PaginationConfig;
 import com.lsoria.qrsec.domain.dto.AddressDTO;
 import com.lsoria.qrsec.domain.dto.mapper.AddressMapper;
+import com.lsoria.qrsec.domain.http.CursorPage;
 import com.lsoria.qrsec.domain.model.Address;
 import com.lsoria.qrsec.domain.model.Role;
 import com.lsoria.qrsec.domain.model.User;
@@ -15,6 +17,7 @@ import com.lsoria.qrsec.service.UserService;
 import com.lsoria.qrsec.service.exception.ConflictException;
 import com.lsoria.qrsec.service.exception.NotFoundException;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.enums.ParameterIn;
@@ -38,7 +41,9 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @Slf4j
 @RestController
@@ -55,6 +60,12 @@ public class AddressController {
     @Autowired
     AddressMapper addressMapper;
 
+    @Autowired
+    PaginationConfig paginationConfig;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
     @Operation(summary = "Get all Addresses (privileged)", description = "Get all Addresses from the neighbourhood")
     @GetMapping("${api.path.addresses}")
     @Parameter(
@@ -67,6 +78,24 @@ public class AddressController {
                     example = "exa@mple.com"
             )
     )
+    @Parameter(
+            name = "cursor",
+            description = "Id of the last element of the previous page, the server returns it in the X-Next-Cursor header",
+            in = ParameterIn.QUERY,
+            schema = @Schema(
+                    type = "string",
+                    example = "5f15a5256d2a2a1ac0e4d999"
+            )
+    )
+    @Parameter(
+            name = "limit",
+            description = "Maximum number of elements in the page, capped by the server",
+            in = ParameterIn.QUERY,
+            schema = @Schema(
+                    type = "integer",
+                    example = "100"
+            )
+    )
     @ApiResponses(value = {
             @ApiResponse(
                     responseCode = "200",
@@ -100,7 +129,9 @@ public class AddressController {
             )
     })
     public ResponseEntity<List<AddressDTO>> getAddresses(
-            @RequestHeader(value = "X-Email") @NotNull String email
+            @RequestHeader(value = "X-Email") @NotNull String email,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit
     ) {
 
         try {
@@ -112,14 +143,87 @@ public class AddressController {
 
             }
 
-            List<Address> addresses = addressService.findAll();
-            if (addresses.isEmpty()) {
+            CursorPage<Address> addresses = addressService.findAll(cursor, paginationConfig.limit(limit));
+            if (addresses.getContent().isEmpty()) {
 
                 return ResponseEntity.noContent().build();
 
             }
 
-            return ResponseEntity.ok(addresses.stream().map(addressMapper::addressToAddressDTO).collect(Collectors.toList()));
+            return CursorResponses.page(addresses.getContent().stream().map(addressMapper::addressToAddressDTO).collect(Collectors.toList()), addresses.getNextCursor());
+
+        } catch (NotFoundException exception) {
+
+            log.error("Message: {}.", exception.getMessage());
+
+            return ResponseEntity.notFound().build();
+
+        } catch (Exception exception) {
+
+            log.error("Couldn't find all the Addresses.\nMessage: {}.\nStackTrace:\n{}", exception.getMessage(), exception.getStackTrace());
+
+        }
+
+        return ResponseEntity.internalServerError().build();
+
+    }
+
+    @Operation(summary = "Stream all Addresses (privileged)", description = "Same Addresses as the paginated endpoint, written as NDJSON while they are read")
+    @GetMapping(path = "${api.path.addresses}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Parameter(
+            name = "X-Email",
+            description = "Email of the Admin that wants to see the Addresses",
+            in = ParameterIn.HEADER,
+            required = true,
+            schema = @Schema(
+                    type = "string",
+                    example = "exa@mple.com"
+            )
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Addresses successfully retrieved",
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                            schema = @Schema(implementation = AddressDTO.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "User is not Authorized (not a privileged User)",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "User not found on the database",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "Some error prevented the Addresses from being retrieved",
+                    content = @Content()
+            )
+    })
+    public ResponseEntity<StreamingResponseBody> getAddressesStream(
+            @RequestHeader(value = "X-Email") @NotNull String email
+    ) {
+
+        try {
+
+            // TODO: Replace with @PreAuthorize("hasAuthority('ADMIN')")
+            if (!userService.userIsAuthorized(email, new Role(Role.ADMIN))) {
+
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+            }
+
+            return CursorResponses.stream(
+                    objectMapper,
+                    paginationConfig.getMaxLimit(),
+                    (pageCursor, pageLimit) -> addressService.findAll(pageCursor, pageLimit),
+                    addressMapper::addressToAddressDTO
+            );
 
         } catch (NotFoundException exception) {
 
@@ -0,0 +1,242 @@
+package com.lsoria.qrsec.controller.rest;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import com.lsoria.qrsec.domain.http.Occupancy;
+import com.lsoria.qrsec.domain.model.OccupancyRollup;
+import com.lsoria.qrsec.domain.model.Role;
+import com.lsoria.qrsec.service.UserService;
+import com.lsoria.qrsec.service.analytics.OccupancyService;
+import com.lsoria.qrsec.service.exception.NotFoundException;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.enums.ParameterIn;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.constraints.NotNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@Slf4j
+@RestController
+@Tag(name = "Analytics controller", description = "Occupancy of the neighbourhood")
+@RequestMapping(path = "${api.path}", produces = MediaType.APPLICATION_JSON_VALUE)
+public class AnalyticsController {
+
+    @Autowired
+    OccupancyService occupancyService;
+
+    @Autowired
+    UserService userService;
+
+    @Operation(summary = "Get the occupancy of a range (privileged)", description = """
+            Arrivals, departures and visitors inside at the end of every hour or day of the range,
+            read from counters kept as the actions are recorded""")
+    @GetMapping("${api.path.analytics}/occupancy")
+    @Parameter(
+            name = "X-Email",
+            description = "Email of the Admin that wants to see the occupancy",
+            in = ParameterIn.HEADER,
+            required = true,
+            schema = @Schema(
+                    type = "string",
+                    example = "exa@mple.com"
+            )
+    )
+    @Parameter(
+            name = "from",
+            description = "Start of the range, ISO 8601 local date time",
+            in = ParameterIn.QUERY,
+            required = true,
+            schema = @Schema(
+                    type = "string",
+                    example = "2024-09-23T00:00:00"
+            )
+    )
+    @Parameter(
+            name = "to",
+            description = "End of the range (its period included), ISO 8601 local date time",
+            in = ParameterIn.QUERY,
+            required = true,
+            schema = @Schema(
+                    type = "string",
+                    example = "2024-09-23T23:59:59"
+            )
+    )
+    @Parameter(
+            name = "granularity",
+            description = "Length of each period",
+            in = ParameterIn.QUERY,
+            schema = @Schema(
+                    type = "string",
+                    allowableValues = {
+                            OccupancyRollup.HOUR,
+                            OccupancyRollup.DAY
+                    },
+                    example = OccupancyRollup.HOUR
+            )
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Occupancy successfully retrieved",
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            array = @ArraySchema(
+                                    schema = @Schema(implementation = Occupancy.class)
+                            )
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "The range or the granularity is invalid, or the range is too long",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "User is not Authorized",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "Some error prevented the occupancy from being retrieved",
+                    content = @Content()
+            )
+    })
+    public ResponseEntity<List<Occupancy>> getOccupancy(
+            @RequestHeader(value = "X-Email") @NotNull String email,
+            @RequestParam @NotNull String from,
+            @RequestParam @NotNull String to,
+            @RequestParam(defaultValue = OccupancyRollup.HOUR) String granularity
+    ) {
+
+        try {
+
+            // TODO: Replace with @PreAuthorize("hasAuthority('ADMIN')")
+            if (!userService.userIsAuthorized(email, new Role(Role.ADMIN))) {
+
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+            }
+
+            LocalDateTime parsedFrom;
+            LocalDateTime parsedTo;
+
+            try {
+
+                parsedFrom = LocalDateTime.parse(from, DateTimeFormatter.ISO_DATE_TIME);
+                parsedTo = LocalDateTime.parse(to, DateTimeFormatter.ISO_DATE_TIME);
+
+            } catch (Exception e) {
+
+                return ResponseEntity.badRequest().build();
+
+            }
+
+            return ResponseEntity.ok(occupancyService.range(granularity, parsedFrom, parsedTo));
+
+        } catch (NotFoundException exception) {
+
+            log.error("Message: {}.", exception.getMessage());
+
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+        } catch (IllegalArgumentException exception) {
+
+            log.error("Message: {}.", exception.getMessage());
+
+            return ResponseEntity.badRequest().build();
+
+        } catch (Exception exception) {
+
+            log.error("Couldn't get the occupancy from {} to {}.\nMessage: {}.\nStackTrace:\n{}", from, to, exception.getMessage(), exception.getStackTrace());
+
+        }
+
+        return ResponseEntity.internalServerError().build();
+
+    }
+
+    @Operation(summary = "Recount the occupancy (privileged)", description = """
+            Recounts the hourly and daily counters from the recorded actions, plus the last arrival and departure
+            of invites scanned before actions were recorded. Periods older than the backfill lag are replaced,
+            more recent ones are only filled when nothing was counted in them yet.
+            Runs by itself on the first start, running it again gives the same counters""")
+    @PostMapping("${api.path.analytics}/occupancy/backfill")
+    @Parameter(
+            name = "X-Email",
+            description = "Email of the Admin that wants to recount the occupancy",
+            in = ParameterIn.HEADER,
+            required = true,
+            schema = @Schema(
+                    type = "string",
+                    example = "exa@mple.com"
+            )
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "204",
+                    description = "Occupancy successfully recounted",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "User is not Authorized",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "Some error prevented the occupancy from being recounted",
+                    content = @Content()
+            )
+    })
+    public ResponseEntity<Void> backfillOccupancy(
+            @RequestHeader(value = "X-Email") @NotNull String email
+    ) {
+
+        try {
+
+            // TODO: Replace with @PreAuthorize("hasAuthority('ADMIN')")
+            if (!userService.userIsAuthorized(email, new Role(Role.ADMIN))) {
+
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+            }
+
+            occupancyService.backfill();
+
+            return ResponseEntity.noContent().build();
+
+        } catch (NotFoundException exception) {
+
+            log.error("Message: {}.", exception.getMessage());
+
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+        } catch (Exception exception) {
+
+            log.error("Couldn't recount the occupancy.\nMessage: {}.\nStackTrace:\n{}", exception.getMessage(), exception.getStackTrace());
+
+        }
+
+        return ResponseEntity.internalServerError().build();
+
+    }
+
+}
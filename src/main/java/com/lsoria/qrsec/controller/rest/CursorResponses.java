@@ -0,0 +1,66 @@
+package com.lsoria.qrsec.controller.rest;
+
+import java.util.List;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lsoria.qrsec.domain.http.CursorPage;
+import com.lsoria.qrsec.domain.http.Headers;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/*
+    Responses for the paginated list endpoints:
+    - a page: the elements as a JSON array plus the X-Next-Cursor header when there are more elements
+    - a stream: every element as NDJSON, read page by page so only one page is held in memory at a time
+ */
+public final class CursorResponses {
+
+    private CursorResponses() {
+    }
+
+    @FunctionalInterface
+    public interface PageSource<T> {
+
+        CursorPage<T> fetch(String cursor, int limit) throws Exception;
+
+    }
+
+    public static <T> ResponseEntity<List<T>> page(List<T> content, String nextCursor) {
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (nextCursor != null) {
+            response.header(Headers.NEXT_CURSOR, nextCursor);
+        }
+
+        return response.body(content);
+
+    }
+
+    public static <T, R> ResponseEntity<StreamingResponseBody> stream(ObjectMapper objectMapper, int pageSize, PageSource<T> source, Function<T, R> mapper) {
+
+        StreamingResponseBody body = outputStream -> {
+            String cursor = null;
+            do {
+                CursorPage<T> page;
+                try {
+                    page = source.fetch(cursor, pageSize);
+                } catch (Exception exception) {
+                    throw new IllegalStateException("Couldn't fetch the page after cursor " + cursor, exception);
+                }
+                for (T element : page.getContent()) {
+                    outputStream.write(objectMapper.writeValueAsBytes(mapper.apply(element)));
+                    outputStream.write('\n');
+                }
+                outputStream.flush();
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+        };
+
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+
+    }
+
+}
@@ -1,18 +1,29 @@
 package com.lsoria.qrsec.controller.rest;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+import com.lsoria.qrsec.config.PaginationConfig;
 import com.lsoria.qrsec.domain.dto.GuestDTO;
 import com.lsoria.qrsec.domain.dto.mapper.GuestMapper;
+import com.lsoria.qrsec.domain.http.CursorPage;
+import com.lsoria.qrsec.domain.http.GuestImportEvent;
 import com.lsoria.qrsec.domain.model.Guest;
 import com.lsoria.qrsec.domain.model.Role;
 import com.lsoria.qrsec.domain.model.User;
+import com.lsoria.qrsec.service.GuestImportService;
 import com.lsoria.qrsec.service.GuestService;
 import com.lsoria.qrsec.service.UserService;
 import com.lsoria.qrsec.service.exception.NotFoundException;
+import com.lsoria.qrsec.service.exception.UnauthorizedException;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.enums.ParameterIn;
@@ -25,6 +36,7 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.constraints.NotNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -36,7 +48,9 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @Slf4j
 @RestController
@@ -47,12 +61,21 @@ public class GuestController {
     @Autowired
     GuestService guestService;
 
+    @Autowired
+    GuestImportService guestImportService;
+
     @Autowired
     UserService userService;
 
     @Autowired
     GuestMapper guestMapper;
 
+    @Autowired
+    PaginationConfig paginationConfig;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
     @Operation(summary = "Get all Guests (privileged or self)", description = """
             Get Guests based on the current User:
             - ADMIN: All Guests on the database
@@ -68,6 +91,24 @@ public class GuestController {
                     example = "exa@mple.com"
             )
     )
+    @Parameter(
+            name = "cursor",
+            description = "Id of the last element of the previous page, the server returns it in the X-Next-Cursor header",
+            in = ParameterIn.QUERY,
+            schema = @Schema(
+                    type = "string",
+                    example = "5f15a5256d2a2a1ac0e4d999"
+            )
+    )
+    @Parameter(
+            name = "limit",
+            description = "Maximum number of elements in the page, capped by the server",
+            in = ParameterIn.QUERY,
+            schema = @Schema(
+                    type = "integer",
+                    example = "100"
+            )
+    )
     @ApiResponses(value = {
             @ApiResponse(
                     responseCode = "200",
@@ -96,7 +137,9 @@ public class GuestController {
             )
     })
     public ResponseEntity<List<GuestDTO>> getCurrentUserGuests(
-            @RequestHeader(value = "X-Email") @NotNull String email
+            @RequestHeader(value = "X-Email") @NotNull String email,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit
     ) {
 
         try {
@@ -108,14 +151,82 @@ public class GuestController {
 
             }
 
-            List<Guest> guests = guestService.findGuestsByCurrentUser(email);
-            if (guests.isEmpty()) {
+            CursorPage<Guest> guests = guestService.findGuestsByCurrentUser(email, cursor, paginationConfig.limit(limit));
+            if (guests.getContent().isEmpty()) {
 
                 return ResponseEntity.noContent().build();
 
             }
 
-            return ResponseEntity.ok(guests.stream().map(guestMapper::guestToGuestDTO).collect(Collectors.toList()));
+            return CursorResponses.page(guests.getContent().stream().map(guestMapper::guestToGuestDTO).collect(Collectors.toList()), guests.getNextCursor());
+
+        } catch (NotFoundException exception) {
+
+            log.error("Message: {}.", exception.getMessage());
+
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+        } catch (Exception exception) {
+
+            log.error("Couldn't find all the Guests.\nMessage: {}.\nStackTrace:\n{}", exception.getMessage(), exception.getStackTrace());
+
+        }
+
+        return ResponseEntity.internalServerError().build();
+
+    }
+
+    @Operation(summary = "Stream all Guests (privileged or self)", description = "Same Guests as the paginated endpoint, written as NDJSON while they are read")
+    @GetMapping(path = "${api.path.guests}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Parameter(
+            name = "X-Email",
+            description = "Email of the User that wants to see the Guests",
+            in = ParameterIn.HEADER,
+            required = true,
+            schema = @Schema(
+                    type = "string",
+                    example = "exa@mple.com"
+            )
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Guests successfully retrieved",
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                            schema = @Schema(implementation = GuestDTO.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "User is not Authorized",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "Some error prevented the Guests from being retrieved",
+                    content = @Content()
+            )
+    })
+    public ResponseEntity<StreamingResponseBody> getCurrentUserGuestsStream(
+            @RequestHeader(value = "X-Email") @NotNull String email
+    ) {
+
+        try {
+
+            // TODO: Replace with @PreAuthorize("hasAuthority('OWNER')") or @PreAuthorize("hasAuthority('ADMIN')")
+            if (!userService.userIsAuthorized(email, new Role(Role.OWNER)) && !userService.userIsAuthorized(email, new Role(Role.ADMIN))) {
+
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+            }
+
+            return CursorResponses.stream(
+                    objectMapper,
+                    paginationConfig.getMaxLimit(),
+                    (pageCursor, pageLimit) -> guestService.findGuestsByCurrentUser(email, pageCursor, pageLimit),
+                    guestMapper::guestToGuestDTO
+            );
 
         } catch (NotFoundException exception) {
 
@@ -316,6 +427,98 @@ public class GuestController {
 
     }
 
+    @Operation(summary = "Import Guests", description = """
+            Upsert the Guests of a CSV (header row with dni, first_name, last_name, phone) or NDJSON upload by dni,
+            adding the current User as their owner. Guests that already exist keep their names and phone.
+            The upload is read while it arrives and applied in batches,
+            the answer is NDJSON written as it goes:
+            - {"type": "error", "line": n, "error": "..."} for every row that was not imported
+            - {"type": "progress", ...} with the totals after every batch
+            - {"type": "done", "read": n, "inserted": n, "updated": n, "failed": n} at the end""")
+    @PostMapping(path = "${api.path.guests}/import", consumes = {"text/csv", MediaType.APPLICATION_NDJSON_VALUE}, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Parameter(
+            name = "X-Email",
+            description = "Email of the Owner that imports the Guests",
+            in = ParameterIn.HEADER,
+            required = true,
+            schema = @Schema(
+                    type = "string",
+                    example = "exa@mple.com"
+            )
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Upload being imported",
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                            schema = @Schema(implementation = GuestImportEvent.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "User is not Authorized",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "Some error prevented the Guests from being imported",
+                    content = @Content()
+            )
+    })
+    public ResponseEntity<StreamingResponseBody> importGuests(
+            @RequestHeader(value = "X-Email") @NotNull String email,
+            @RequestHeader(value = HttpHeaders.CONTENT_TYPE) @NotNull String contentType,
+            InputStream upload
+    ) {
+
+        try {
+
+            // TODO: Replace with @PreAuthorize("hasAuthority('OWNER')") OR @PreAuthorize("hasAuthority('ADMIN')")
+            if (!userService.userIsAuthorized(email, new Role(Role.OWNER)) && !userService.userIsAuthorized(email, new Role(Role.ADMIN))) {
+
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+            }
+
+            GuestImportService.Format format = MediaType.APPLICATION_NDJSON.isCompatibleWith(MediaType.parseMediaType(contentType))
+                    ? GuestImportService.Format.NDJSON
+                    : GuestImportService.Format.CSV;
+
+            // Each event is flushed as it is written, the next batch is read once the client took the previous progress
+            StreamingResponseBody body = outputStream -> {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(upload, StandardCharsets.UTF_8));
+                try {
+                    guestImportService.importGuests(reader, format, email, event -> {
+                        outputStream.write(objectMapper.writeValueAsBytes(event));
+                        outputStream.write('\n');
+                        outputStream.flush();
+                    });
+                } catch (IOException exception) {
+                    throw exception;
+                } catch (Exception exception) {
+                    throw new IllegalStateException("Couldn't import the Guests of " + email, exception);
+                }
+            };
+
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+
+        } catch (NotFoundException exception) {
+
+            log.error("Message: {}.", exception.getMessage());
+
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+        } catch (Exception exception) {
+
+            log.error("Couldn't import the Guests.\nMessage: {}.\nStackTrace:\n{}", exception.getMessage(), exception.getStackTrace());
+
+        }
+
+        return ResponseEntity.internalServerError().build();
+
+    }
+
     @Operation(summary = "Update a Guest (privileged)", description = "Update guest's information")
     @PutMapping("${api.path.guests}/{id}")
     @Parameter(
@@ -469,33 +672,16 @@ public class GuestController {
 
         try {
 
-            Optional<User> currentUser = userService.findByUsername(email);
-            if (currentUser.isEmpty()) {
-
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
-
-            }
-            Optional<Guest> guest = guestService.findOne(id);
-            if (guest.isEmpty()) {
+            // Ownership is checked by the update itself, the Guest isn't read first
+            if (!guestService.delete(id, email)) {
 
                 return ResponseEntity.notFound().build();
 
             }
-            // TODO: Replace with @PreAuthorize("hasAuthority('OWNER')")
-            if (
-                userService.userIsAuthorized(email, new Role(Role.OWNER)) &&
-                !guest.get().getOwners().contains(currentUser.get())
-            ) {
-
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
-
-            }
-
-            guestService.delete(id, email);
 
             return ResponseEntity.noContent().build();
 
-        } catch (NotFoundException exception) {
+        } catch (NotFoundException | UnauthorizedException exception) {
 
             log.error("Message: {}.", exception.getMessage());
 
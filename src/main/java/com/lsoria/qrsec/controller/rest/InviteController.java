@@ -8,18 +8,30 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+import com.lsoria.qrsec.config.PaginationConfig;
+import com.lsoria.qrsec.domain.dto.AccessEventDTO;
 import com.lsoria.qrsec.domain.dto.InviteDTO;
 import com.lsoria.qrsec.domain.dto.PublicInviteDTO;
 import com.lsoria.qrsec.domain.dto.SimplifiedGuestDTO;
+import com.lsoria.qrsec.domain.dto.mapper.AccessEventMapper;
 import com.lsoria.qrsec.domain.dto.mapper.InviteMapper;
+import com.lsoria.qrsec.domain.http.BulkItemResult;
+import com.lsoria.qrsec.domain.http.CursorPage;
+import com.lsoria.qrsec.domain.model.AccessEvent;
 import com.lsoria.qrsec.domain.model.Guest;
 import com.lsoria.qrsec.domain.model.Invite;
 import com.lsoria.qrsec.domain.model.Role;
 import com.lsoria.qrsec.domain.model.User;
+import com.lsoria.qrsec.service.AccessEventService;
 import com.lsoria.qrsec.service.InviteService;
 import com.lsoria.qrsec.service.UserService;
+import com.lsoria.qrsec.service.exception.BackpressureException;
+import com.lsoria.qrsec.service.exception.ConflictException;
 import com.lsoria.qrsec.service.exception.NotFoundException;
+import com.lsoria.qrsec.service.token.InviteToken;
+import com.lsoria.qrsec.service.token.InviteTokenService;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.enums.ParameterIn;
@@ -32,6 +44,8 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.constraints.NotNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -43,7 +57,9 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @Slf4j
 @RestController
@@ -60,6 +76,24 @@ public class InviteController {
     @Autowired
     InviteMapper inviteMapper;
 
+    @Autowired
+    InviteTokenService inviteTokenService;
+
+    @Autowired
+    AccessEventService accessEventService;
+
+    @Autowired
+    AccessEventMapper accessEventMapper;
+
+    @Autowired
+    PaginationConfig paginationConfig;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Value("${qrsec.invites.bulk.max-size:500}")
+    int bulkMaxSize;
+
     List<String> availableActions = Arrays.asList("enable", "disable", "arrival", "departure");
 
     @Operation(summary = "Get all Invites", description = "Get Invites based on the current User:\n" +
@@ -77,6 +111,24 @@ public class InviteController {
                     example = "exa@mple.com"
             )
     )
+    @Parameter(
+            name = "cursor",
+            description = "Id of the last element of the previous page, the server returns it in the X-Next-Cursor header",
+            in = ParameterIn.QUERY,
+            schema = @Schema(
+                    type = "string",
+                    example = "5f15a5256d2a2a1ac0e4d999"
+            )
+    )
+    @Parameter(
+            name = "limit",
+            description = "Maximum number of elements in the page, capped by the server",
+            in = ParameterIn.QUERY,
+            schema = @Schema(
+                    type = "integer",
+                    example = "100"
+            )
+    )
     @ApiResponses(value = {
             @ApiResponse(
                     responseCode = "200",
@@ -105,7 +157,9 @@ public class InviteController {
             )
     })
     public ResponseEntity<List<InviteDTO>> getCurrentUserInvites(
-            @RequestHeader(value = "X-Email") @NotNull String email
+            @RequestHeader(value = "X-Email") @NotNull String email,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit
     ) {
 
         try {
@@ -117,14 +171,14 @@ public class InviteController {
 
             }
 
-            List<Invite> invites = inviteService.findInvitesByCurrentUser(email);
-            if (invites.isEmpty()) {
+            CursorPage<Invite> invites = inviteService.findInvitesByCurrentUser(email, cursor, paginationConfig.limit(limit));
+            if (invites.getContent().isEmpty()) {
 
                 return ResponseEntity.noContent().build();
 
             }
 
-            return ResponseEntity.ok(invites.stream().map(inviteMapper::inviteToInviteDTO).collect(Collectors.toList()));
+            return CursorResponses.page(invites.getContent().stream().map(inviteMapper::inviteToInviteDTO).collect(Collectors.toList()), invites.getNextCursor());
 
         } catch (NotFoundException exception) {
 
@@ -142,6 +196,68 @@ public class InviteController {
 
     }
 
+    @Operation(summary = "Stream all Invites", description = "Same Invites as the paginated endpoint, written as NDJSON while they are read")
+    @GetMapping(path = "${api.path.invites}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Parameter(
+            name = "X-Email",
+            description = "Email of the Owner that wants to see their Invites",
+            in = ParameterIn.HEADER,
+            required = true,
+            schema = @Schema(
+                    type = "string",
+                    example = "exa@mple.com"
+            )
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Invites successfully retrieved",
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                            schema = @Schema(implementation = InviteDTO.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "User is not Authorized",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "Some error prevented the Invites from being retrieved",
+                    content = @Content()
+            )
+    })
+    public ResponseEntity<StreamingResponseBody> getCurrentUserInvitesStream(
+            @RequestHeader(value = "X-Email") @NotNull String email
+    ) {
+
+        try {
+
+            // TODO: Replace with @PreAuthorize("hasAuthority('OWNER') or hasAuthority('ADMIN') or hasAuthority('GUARD')")
+            if (userService.findByUsername(email).isEmpty()) {
+
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+            }
+
+            return CursorResponses.stream(
+                    objectMapper,
+                    paginationConfig.getMaxLimit(),
+                    (pageCursor, pageLimit) -> inviteService.findInvitesByCurrentUser(email, pageCursor, pageLimit),
+                    inviteMapper::inviteToInviteDTO
+            );
+
+        } catch (Exception exception) {
+
+            log.error("Couldn't find the Invites.\nMessage: {}.\nStackTrace:\n{}", exception.getMessage(), exception.getStackTrace());
+
+        }
+
+        return ResponseEntity.internalServerError().build();
+
+    }
+
     @Operation(summary = "Get an Invite", description = "Get an specific Invite")
     @GetMapping("${api.path.invites}/{id}")
     @Parameter(
@@ -225,7 +341,7 @@ public class InviteController {
 
             }
 
-            InviteDTO inviteDTO = inviteMapper.inviteToInviteDTO(invite.get());
+            InviteDTO inviteDTO = inviteMapper.inviteToInviteDTO(inviteService.withToken(invite.get()));
 
             return ResponseEntity.ok(inviteDTO);
 
@@ -245,6 +361,135 @@ public class InviteController {
 
     }
 
+    @Operation(summary = "Get an Invite's history (privileged or self)", description = "Actions recorded at the gate over the Invite, oldest first")
+    @GetMapping("${api.path.invites}/{id}/history")
+    @Parameter(
+            name = "X-Email",
+            description = "Email of the User that wants to see the Invite's history",
+            in = ParameterIn.HEADER,
+            required = true,
+            schema = @Schema(
+                    type = "string",
+                    example = "exa@mple.com"
+            )
+    )
+    @Parameter(
+            name = "id",
+            description = "Invite uuid",
+            in = ParameterIn.PATH,
+            required = true,
+            schema = @Schema(
+                    type = "string",
+                    format = "uuid",
+                    example = "5f15a5256d2a2a1ac0e4d999"
+            )
+    )
+    @Parameter(
+            name = "cursor",
+            description = "Id of the last element of the previous page, the server returns it in the X-Next-Cursor header",
+            in = ParameterIn.QUERY,
+            schema = @Schema(
+                    type = "string",
+                    example = "5f15a5256d2a2a1ac0e4d999"
+            )
+    )
+    @Parameter(
+            name = "limit",
+            description = "Maximum number of elements in the page, capped by the server",
+            in = ParameterIn.QUERY,
+            schema = @Schema(
+                    type = "integer",
+                    example = "100"
+            )
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "History successfully retrieved",
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            array = @ArraySchema(
+                                    schema = @Schema(implementation = AccessEventDTO.class)
+                            )
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "204",
+                    description = "Nothing was recorded for the Invite",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "User is not Authorized",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Invite not found",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "Some error prevented the history from being retrieved",
+                    content = @Content()
+            )
+    })
+    public ResponseEntity<List<AccessEventDTO>> getInviteHistory(
+            @RequestHeader(value = "X-Email") @NotNull String email,
+            @PathVariable @NotNull String id,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit
+    ) {
+
+        try {
+
+            // TODO: Replace with @PreAuthorize("hasAuthority('OWNER') or hasAuthority('ADMIN') or hasAuthority('GUARD')")
+            Optional<User> currentUser = userService.findByUsername(email);
+            if (currentUser.isEmpty()) {
+
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+            }
+            Optional<Invite> invite = inviteService.findOne(id);
+            if (invite.isEmpty()) {
+
+                return ResponseEntity.notFound().build();
+
+            }
+            if (
+                (
+                    currentUser.get().getAuthorities() == null ||
+                    currentUser.get().getAuthorities().isEmpty()
+                ) ||
+                (
+                    userService.userIsAuthorized(email, new Role(Role.OWNER)) &&
+                    !Objects.equals(invite.get().getOwner(), currentUser.get())
+                )
+            ) {
+
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+            }
+
+            CursorPage<AccessEvent> history = accessEventService.findHistory(id, cursor, paginationConfig.limit(limit));
+            if (history.getContent().isEmpty()) {
+
+                return ResponseEntity.noContent().build();
+
+            }
+
+            return CursorResponses.page(history.getContent().stream().map(accessEventMapper::accessEventToAccessEventDTO).collect(Collectors.toList()), history.getNextCursor());
+
+        } catch (Exception exception) {
+
+            log.error("Couldn't find the history of the Invite {}.\nMessage: {}.\nStackTrace:\n{}", id, exception.getMessage(), exception.getStackTrace());
+
+        }
+
+        return ResponseEntity.internalServerError().build();
+
+    }
+
     @Operation(summary = "Validate Guest access to Invite", description = "Get a specific and simplified Invite for the public to see in the web app")
     @PostMapping("${api.path.invites.public}/{id}")
     @Parameter(
@@ -410,6 +655,117 @@ public class InviteController {
 
     }
 
+    @Operation(summary = "Create many Invites (self)", description = "Save many invites at once, each one is created or rejected on its own")
+    @PostMapping("${api.path.invites}/bulk")
+    @Parameter(
+            name = "X-Email",
+            description = "Email of the Owner that wants to create the Invites",
+            in = ParameterIn.HEADER,
+            required = true,
+            schema = @Schema(
+                    type = "string",
+                    example = "exa@mple.com"
+            )
+    )
+    @io.swagger.v3.oas.annotations.parameters.RequestBody(
+            description = "New Invites",
+            required = true,
+            content = @Content(
+                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                    array = @ArraySchema(schema = @Schema(implementation = InviteDTO.class))
+            )
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "201",
+                    description = "All the Invites were created",
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            array = @ArraySchema(schema = @Schema(implementation = BulkItemResult.class))
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "207",
+                    description = "Some Invites were not created, see the status and error of each one",
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            array = @ArraySchema(schema = @Schema(implementation = BulkItemResult.class))
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "No Invites or more than the allowed per request",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "User is not Authorized",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "Some error prevented the Invites from being created",
+                    content = @Content()
+            )
+    })
+    public ResponseEntity<List<BulkItemResult<InviteDTO>>> createInvites(
+            @RequestHeader(value = "X-Email") @NotNull String email,
+            @RequestBody List<InviteDTO> inviteDTOs
+    ) {
+
+        try {
+
+            if (inviteDTOs == null || inviteDTOs.isEmpty() || inviteDTOs.size() > bulkMaxSize) {
+
+                return ResponseEntity.badRequest().build();
+
+            }
+
+            // TODO: Replace with @PreAuthorize("hasAuthority('OWNER')")
+            if (!userService.userIsAuthorized(email, new Role(Role.OWNER))) {
+
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+            }
+
+            List<Invite> newInvites = inviteDTOs.stream()
+                    .map(inviteDTO -> {
+                        if (inviteDTO == null) {
+                            return null;
+                        }
+                        Invite newInvite = inviteMapper.inviteDTOToInvite(inviteDTO);
+                        newInvite.setId(null);
+                        newInvite.setArrivalTime(null);
+                        newInvite.setDepartureTime(null);
+                        newInvite.setEnabled(true);
+                        return newInvite;
+                    })
+                    .collect(Collectors.toList());
+
+            List<BulkItemResult<InviteDTO>> results = inviteService.saveAll(newInvites, email).stream()
+                    .map(result -> result.map(inviteMapper::inviteToInviteDTO))
+                    .collect(Collectors.toList());
+
+            boolean allCreated = results.stream().allMatch(BulkItemResult::isCreated);
+
+            return ResponseEntity.status(allCreated ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS).body(results);
+
+        } catch (NotFoundException exception) {
+
+            log.error("Message: {}.", exception.getMessage());
+
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+        } catch (Exception exception) {
+
+            log.error("Couldn't create {} Invites.\nMessage: {}.\nStackTrace:\n{}", inviteDTOs.size(), exception.getMessage(), exception.getStackTrace());
+
+        }
+
+        return ResponseEntity.internalServerError().build();
+
+    }
+
     @Operation(summary = "Update an Invite (self)", description = "Update invite's information")
     @PutMapping("${api.path.invites}/{id}")
     @Parameter(
@@ -460,6 +816,11 @@ public class InviteController {
                     description = "Invite not found",
                     content = @Content()
             ),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "The Invite changed since it was read, read it again and retry",
+                    content = @Content()
+            ),
             @ApiResponse(
                     responseCode = "500",
                     description = "Some error prevented the Invite from being updated",
@@ -517,6 +878,12 @@ public class InviteController {
 
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
+        } catch (ConflictException conflictException) {
+
+            log.error("Message: {}.", conflictException.getMessage());
+
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+
         } catch (Exception exception) {
 
             log.error("Couldn't update Invite with values:\n{}\nMessage: {}.\nStackTrace:\n{}", inviteDTO, exception.getMessage(), exception.getStackTrace());
@@ -699,12 +1066,110 @@ public class InviteController {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
             }
-            Optional<Invite> invite = inviteService.findOne(id);
+            // TODO: Replace with @PreAuthorize("hasAuthority('GUARD')")
+            if (!userService.userIsAuthorized(email, new Role(Role.GUARD))) {
+
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+            }
+            // Disabled and deleted invites are known in memory, no need to read them
+            if (inviteService.isRevoked(id)) {
+
+                return ResponseEntity.badRequest().build();
+
+            }
+            Optional<Invite> invite = inviteService.findOneForGate(id);
             if (invite.isEmpty()) {
 
                 return ResponseEntity.notFound().build();
 
             }
+
+            if (!inviteService.inviteIsValid(invite.get(), timestamp)) {
+
+                return ResponseEntity.badRequest().build();
+
+            }
+
+            return ResponseEntity.ok().build();
+
+        } catch (NotFoundException exception) {
+
+            log.error("Message: {}.", exception.getMessage());
+
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+        } catch (Exception exception) {
+
+            log.error("Couldn't validate the Invite {}.\nMessage: {}.\nStackTrace:\n{}", id, exception.getMessage(), exception.getStackTrace());
+
+        }
+
+        return ResponseEntity.internalServerError().build();
+
+    }
+
+    @Operation(summary = "Validate an Invite's QR token (guard)", description = "Check if an Invite is valid in a certain moment in time, from its signed token and without reading the Invite")
+    @GetMapping("${api.path.invites.validate}/token/{token}")
+    @Parameter(
+            name = "X-Email",
+            description = "Email of the Guard that wants to validate the Invite",
+            in = ParameterIn.HEADER,
+            required = true,
+            schema = @Schema(
+                    type = "string",
+                    example = "exa@mple.com"
+            )
+    )
+    @Parameter(
+            name = "X-Client-Timestamp",
+            description = "Timestamp of the Guard that is trying to validate the invite.\nShould be ISO 8601 formatted",
+            in = ParameterIn.HEADER,
+            required = true,
+            schema = @Schema(
+                    type = "string",
+                    example = "2024-09-23T14:30:00+02:00"
+            )
+    )
+    @Parameter(
+            name = "token",
+            description = "Invite's QR token, as returned with the Invite",
+            in = ParameterIn.PATH,
+            required = true,
+            schema = @Schema(
+                    type = "string"
+            )
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Invite is valid",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Invite is invalid, revoked or the token is not genuine",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "User is not Authorized",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "Some error prevented the Invite from being validated",
+                    content = @Content()
+            )
+    })
+    public ResponseEntity<InviteDTO> validateInviteToken(
+            @RequestHeader(value = "X-Email") @NotNull String email,
+            @RequestHeader(value = "X-Client-Timestamp") @NotNull String timestamp,
+            @PathVariable @NotNull String token
+    ) {
+
+        try {
+
             // TODO: Replace with @PreAuthorize("hasAuthority('GUARD')")
             if (!userService.userIsAuthorized(email, new Role(Role.GUARD))) {
 
@@ -712,7 +1177,8 @@ public class InviteController {
 
             }
 
-            if (!inviteService.inviteIsValid(invite.get(), timestamp)) {
+            Optional<InviteToken> inviteToken = inviteTokenService.verify(token);
+            if (inviteToken.isEmpty() || !inviteService.tokenIsValid(inviteToken.get(), timestamp)) {
 
                 return ResponseEntity.badRequest().build();
 
@@ -728,7 +1194,7 @@ public class InviteController {
 
         } catch (Exception exception) {
 
-            log.error("Couldn't validate the Invite {}.\nMessage: {}.\nStackTrace:\n{}", id, exception.getMessage(), exception.getStackTrace());
+            log.error("Couldn't validate the Invite token.\nMessage: {}.\nStackTrace:\n{}", exception.getMessage(), exception.getStackTrace());
 
         }
 
@@ -785,6 +1251,15 @@ public class InviteController {
                     example = "5f15a5256d2a2a1ac0e4d999"
             )
     )
+    @Parameter(
+            name = "guest",
+            description = "Id of the Guest that goes through the gate, kept in the Invite's history",
+            in = ParameterIn.QUERY,
+            schema = @Schema(
+                    type = "string",
+                    example = "5f15a5256d2a2a1ac0e4d999"
+            )
+    )
     @ApiResponses(value = {
             @ApiResponse(
                     responseCode = "200",
@@ -806,6 +1281,11 @@ public class InviteController {
                     description = "Invite not found",
                     content = @Content()
             ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "Too many scans waiting to be written, try again after Retry-After seconds",
+                    content = @Content()
+            ),
             @ApiResponse(
                     responseCode = "500",
                     description = "Some error prevented the Invite from being updated",
@@ -816,7 +1296,8 @@ public class InviteController {
             @RequestHeader(value = "X-Email") @NotNull String email,
             @RequestHeader(value = "X-Client-Timestamp") @NotNull String timestamp,
             @PathVariable @NotNull String id,
-            @PathVariable @NotNull String action
+            @PathVariable @NotNull String action,
+            @RequestParam(required = false) String guest
     ) {
 
         try {
@@ -858,7 +1339,7 @@ public class InviteController {
 
             }
 
-            Invite updatedInvite = inviteService.doAction(invite.get(), action, parsedTimestamp);
+            Invite updatedInvite = inviteService.doAction(invite.get(), action, parsedTimestamp, email, guest);
 
             return ResponseEntity.ok(inviteMapper.inviteToInviteDTO(updatedInvite));
 
@@ -868,6 +1349,12 @@ public class InviteController {
 
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
+        } catch (BackpressureException backpressureException) {
+
+            log.warn("Message: {}.", backpressureException.getMessage());
+
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+
         } catch (Exception exception) {
 
             log.error("Couldn't update the Invite's arrival or departure time {}.\nMessage: {}.\nStackTrace:\n{}", id, exception.getMessage(), exception.getStackTrace());
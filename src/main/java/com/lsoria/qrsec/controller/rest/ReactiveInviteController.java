@@ -0,0 +1,330 @@
+package com.lsoria.qrsec.controller.rest;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import com.lsoria.qrsec.domain.dto.InviteDTO;
+import com.lsoria.qrsec.domain.dto.mapper.InviteMapper;
+import com.lsoria.qrsec.domain.model.Invite;
+import com.lsoria.qrsec.domain.model.Role;
+import com.lsoria.qrsec.domain.model.User;
+import com.lsoria.qrsec.service.ReactiveInviteService;
+import com.lsoria.qrsec.service.exception.BackpressureException;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.enums.ParameterIn;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.constraints.NotNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+/*
+    Same contract as InviteController's validate and action endpoints, without blocking the request thread:
+    the user and the invite are read concurrently through the reactive driver.
+ */
+@Slf4j
+@RestController
+@Tag(name = "Reactive invite controller", description = "Non blocking gate operations over invites")
+@RequestMapping(path = "${api.path}${api.path.reactive}", produces = MediaType.APPLICATION_JSON_VALUE)
+public class ReactiveInviteController {
+
+    @Autowired
+    ReactiveInviteService reactiveInviteService;
+
+    @Autowired
+    InviteMapper inviteMapper;
+
+    List<String> availableActions = Arrays.asList("enable", "disable", "arrival", "departure");
+
+    @Operation(summary = "Validate an Invite (guard), non blocking", description = "Check if an Invite is valid in a certain moment in time")
+    @GetMapping("${api.path.invites.validate}/{id}")
+    @Parameter(
+            name = "X-Email",
+            description = "Email of the Guard that wants to validate the Invite",
+            in = ParameterIn.HEADER,
+            required = true,
+            schema = @Schema(
+                    type = "string",
+                    example = "exa@mple.com"
+            )
+    )
+    @Parameter(
+            name = "X-Client-Timestamp",
+            description = "Timestamp of the Guard that is trying to validate the invite.\nShould be ISO 8601 formatted",
+            in = ParameterIn.HEADER,
+            required = true,
+            schema = @Schema(
+                    type = "string",
+                    example = "2024-09-23T14:30:00+02:00"
+            )
+    )
+    @Parameter(
+            name = "id",
+            description = "Invite uuid",
+            in = ParameterIn.PATH,
+            required = true,
+            schema = @Schema(
+                    type = "string",
+                    format = "uuid",
+                    example = "5f15a5256d2a2a1ac0e4d999"
+            )
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Invite is valid",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Invite is invalid",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "User is not Authorized",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Invite not found",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "Some error prevented the Invite from being validated",
+                    content = @Content()
+            )
+    })
+    public Mono<ResponseEntity<InviteDTO>> validateInvite(
+            @RequestHeader(value = "X-Email") @NotNull String email,
+            @RequestHeader(value = "X-Client-Timestamp") @NotNull String timestamp,
+            @PathVariable @NotNull String id
+    ) {
+
+        Mono<Optional<User>> currentUser = reactiveInviteService.findByUsername(email).map(Optional::of).defaultIfEmpty(Optional.empty());
+        // A disabled or deleted invite is answered from memory, it is not read
+        boolean revoked = reactiveInviteService.isRevoked(id);
+        Mono<Optional<Invite>> invite = revoked
+                ? Mono.just(Optional.empty())
+                : reactiveInviteService.findOne(id).map(Optional::of).defaultIfEmpty(Optional.empty());
+
+        return Mono.zip(currentUser, invite)
+                .flatMap(found -> {
+
+                    if (found.getT1().isEmpty()) {
+
+                        return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).<InviteDTO>build());
+
+                    }
+                    // TODO: Replace with @PreAuthorize("hasAuthority('GUARD')")
+                    if (!found.getT1().get().getAuthorities().contains(new Role(Role.GUARD))) {
+
+                        return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).<InviteDTO>build());
+
+                    }
+                    if (revoked) {
+
+                        return Mono.just(ResponseEntity.badRequest().<InviteDTO>build());
+
+                    }
+                    if (found.getT2().isEmpty()) {
+
+                        return Mono.just(ResponseEntity.notFound().<InviteDTO>build());
+
+                    }
+
+                    return reactiveInviteService.inviteIsValid(found.getT2().get(), timestamp)
+                            .map(valid -> valid ? ResponseEntity.ok().<InviteDTO>build() : ResponseEntity.badRequest().<InviteDTO>build());
+
+                })
+                .onErrorResume(exception -> {
+
+                    log.error("Couldn't validate the Invite {}.\nMessage: {}.\nStackTrace:\n{}", id, exception.getMessage(), exception.getStackTrace());
+
+                    return Mono.just(ResponseEntity.internalServerError().<InviteDTO>build());
+
+                });
+
+    }
+
+    @Operation(summary = "Invite action (guard), non blocking", description = "Update Invite's arrival or departure time")
+    @PostMapping("${api.path.invites}/{id}/action/{action}")
+    @Parameter(
+            name = "X-Email",
+            description = "Email of the Guard that wants to update the Invite's arrival or departure time",
+            in = ParameterIn.HEADER,
+            required = true,
+            schema = @Schema(
+                    type = "string",
+                    example = "exa@mple.com"
+            )
+    )
+    @Parameter(
+            name = "X-Client-Timestamp",
+            description = "Timestamp of the Guard that is trying to update the Invite's arrival or departure time.\nShould be ISO 8601 formatted",
+            in = ParameterIn.HEADER,
+            required = true,
+            schema = @Schema(
+                    type = "string",
+                    example = "2024-09-23T14:30:00+02:00"
+            )
+    )
+    @Parameter(
+            name = "id",
+            description = "Invite uuid",
+            in = ParameterIn.PATH,
+            required = true,
+            schema = @Schema(
+                    type = "string",
+                    format = "uuid",
+                    example = "5f15a5256d2a2a1ac0e4d999"
+            )
+    )
+    @Parameter(
+            name = "action",
+            description = "Actions you can do over an invite",
+            in = ParameterIn.PATH,
+            required = true,
+            schema = @Schema(
+                    type = "string",
+                    allowableValues = {
+                            "arrival",
+                            "departure",
+                            "enable",
+                            "disable"
+                    },
+                    example = "arrival"
+            )
+    )
+    @Parameter(
+            name = "guest",
+            description = "Id of the Guest that goes through the gate, kept in the Invite's history",
+            in = ParameterIn.QUERY,
+            schema = @Schema(
+                    type = "string",
+                    example = "5f15a5256d2a2a1ac0e4d999"
+            )
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Invite updated, owner and guests are not included",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = InviteDTO.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Path param is invalid",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "User is not Authorized",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Invite not found",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "Too many scans waiting to be written, try again after Retry-After seconds",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "Some error prevented the Invite from being updated",
+                    content = @Content()
+            )
+    })
+    public Mono<ResponseEntity<InviteDTO>> inviteAction(
+            @RequestHeader(value = "X-Email") @NotNull String email,
+            @RequestHeader(value = "X-Client-Timestamp") @NotNull String timestamp,
+            @PathVariable @NotNull String id,
+            @PathVariable @NotNull String action,
+            @RequestParam(required = false) String guest
+    ) {
+
+        if (!availableActions.contains(action)) {
+
+            return Mono.just(ResponseEntity.badRequest().<InviteDTO>build());
+
+        }
+
+        LocalDateTime parsedTimestamp;
+
+        try {
+
+            parsedTimestamp = LocalDateTime.parse(timestamp, DateTimeFormatter.ISO_DATE_TIME);
+
+        } catch (Exception e) {
+
+            return Mono.just(ResponseEntity.badRequest().<InviteDTO>build());
+
+        }
+
+        return reactiveInviteService.findByUsername(email)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(currentUser -> {
+
+                    if (currentUser.isEmpty()) {
+
+                        return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).<InviteDTO>build());
+
+                    }
+                    // TODO: Replace with @PreAuthorize("hasAuthority('OWNER')")
+                    if (!currentUser.get().getAuthorities().contains(new Role(Role.OWNER))) {
+
+                        return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).<InviteDTO>build());
+
+                    }
+
+                    return reactiveInviteService.doAction(id, action, parsedTimestamp, email, guest)
+                            .map(updatedInvite -> ResponseEntity.ok(inviteMapper.inviteToInviteDTO(updatedInvite)))
+                            .defaultIfEmpty(ResponseEntity.notFound().<InviteDTO>build());
+
+                })
+                .onErrorResume(exception -> {
+
+                    if (exception instanceof BackpressureException) {
+
+                        log.warn("Message: {}.", exception.getMessage());
+
+                        return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").<InviteDTO>build());
+
+                    }
+
+                    log.error("Couldn't update the Invite's arrival or departure time {}.\nMessage: {}.\nStackTrace:\n{}", id, exception.getMessage(), exception.getStackTrace());
+
+                    return Mono.just(ResponseEntity.internalServerError().<InviteDTO>build());
+
+                });
+
+    }
+
+}
@@ -5,14 +5,17 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+import com.lsoria.qrsec.config.PaginationConfig;
 import com.lsoria.qrsec.domain.dto.UserDTO;
 import com.lsoria.qrsec.domain.dto.mapper.UserMapper;
+import com.lsoria.qrsec.domain.http.CursorPage;
 import com.lsoria.qrsec.domain.model.Role;
 import com.lsoria.qrsec.domain.model.User;
 import com.lsoria.qrsec.service.UserService;
 import com.lsoria.qrsec.service.exception.ConflictException;
 import com.lsoria.qrsec.service.exception.NotFoundException;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.enums.ParameterIn;
@@ -36,7 +39,9 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @Slf4j
 @RestController
@@ -50,6 +55,12 @@ public class UserController {
     @Autowired
     UserMapper userMapper;
 
+    @Autowired
+    PaginationConfig paginationConfig;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
     @Operation(summary = "Get all Users (privileged)", description = "Get all Users from the neighbourhood")
     @GetMapping("${api.path.users}")
     @Parameter(
@@ -62,6 +73,24 @@ public class UserController {
                     example = "exa@mple.com"
             )
     )
+    @Parameter(
+            name = "cursor",
+            description = "Id of the last element of the previous page, the server returns it in the X-Next-Cursor header",
+            in = ParameterIn.QUERY,
+            schema = @Schema(
+                    type = "string",
+                    example = "5f15a5256d2a2a1ac0e4d999"
+            )
+    )
+    @Parameter(
+            name = "limit",
+            description = "Maximum number of elements in the page, capped by the server",
+            in = ParameterIn.QUERY,
+            schema = @Schema(
+                    type = "integer",
+                    example = "100"
+            )
+    )
     @ApiResponses(value = {
             @ApiResponse(
                     responseCode = "200",
@@ -90,7 +119,9 @@ public class UserController {
             )
     })
     public ResponseEntity<List<UserDTO>> getUsers(
-            @RequestHeader(value = "X-Email") @NotNull String email
+            @RequestHeader(value = "X-Email") @NotNull String email,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit
     ) {
 
         try {
@@ -102,14 +133,82 @@ public class UserController {
 
             }
 
-            List<User> users = userService.findAll();
-            if (users.isEmpty()) {
+            CursorPage<User> users = userService.findAll(cursor, paginationConfig.limit(limit));
+            if (users.getContent().isEmpty()) {
 
                 return ResponseEntity.noContent().build();
 
             }
 
-            return ResponseEntity.ok(users.stream().map(userMapper::userToUserDTO).collect(Collectors.toList()));
+            return CursorResponses.page(users.getContent().stream().map(userMapper::userToUserDTO).collect(Collectors.toList()), users.getNextCursor());
+
+        } catch (NotFoundException exception) {
+
+            log.error("Message: {}.", exception.getMessage());
+
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+        } catch (Exception exception) {
+
+            log.error("Couldn't find all the Users.\nMessage: {}.\nStackTrace:\n{}", exception.getMessage(), exception.getStackTrace());
+
+        }
+
+        return ResponseEntity.internalServerError().build();
+
+    }
+
+    @Operation(summary = "Stream all Users (privileged)", description = "Same Users as the paginated endpoint, written as NDJSON while they are read")
+    @GetMapping(path = "${api.path.users}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Parameter(
+            name = "X-Email",
+            description = "Email of the Admin that wants to see the Users",
+            in = ParameterIn.HEADER,
+            required = true,
+            schema = @Schema(
+                    type = "string",
+                    example = "exa@mple.com"
+            )
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Users successfully retrieved",
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                            schema = @Schema(implementation = UserDTO.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "User is not Authorized (not a privileged User)",
+                    content = @Content()
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "Some error prevented the Users from being retrieved",
+                    content = @Content()
+            )
+    })
+    public ResponseEntity<StreamingResponseBody> getUsersStream(
+            @RequestHeader(value = "X-Email") @NotNull String email
+    ) {
+
+        try {
+
+            // TODO: Add @PreAuthorize("hasAuthority('ADMIN')")
+            if (!userService.userIsAuthorized(email, new Role(Role.ADMIN))) {
+
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+            }
+
+            return CursorResponses.stream(
+                    objectMapper,
+                    paginationConfig.getMaxLimit(),
+                    (pageCursor, pageLimit) -> userService.findAll(pageCursor, pageLimit),
+                    userMapper::userToUserDTO
+            );
 
         } catch (NotFoundException exception) {
 
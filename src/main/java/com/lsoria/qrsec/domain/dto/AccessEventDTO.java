@@ -0,0 +1,21 @@
+package com.lsoria.qrsec.domain.dto;
+
+import java.time.LocalDateTime;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AccessEventDTO {
+
+    private String id;
+    private String inviteId;
+    private String guestId;
+    private String guard;
+    private String action;
+    private LocalDateTime timestamp;
+
+}
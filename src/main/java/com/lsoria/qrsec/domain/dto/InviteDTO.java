@@ -30,5 +30,7 @@ public class InviteDTO {
     private Boolean dropsTrueGuest;
     @Schema(accessMode = Schema.AccessMode.READ_ONLY)
     private Boolean enabled;
+    @Schema(accessMode = Schema.AccessMode.READ_ONLY, description = "Signed QR token, validated by the gate without reading the database")
+    private String token;
 
 }
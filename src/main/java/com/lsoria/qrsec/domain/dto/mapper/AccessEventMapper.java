@@ -0,0 +1,16 @@
+package com.lsoria.qrsec.domain.dto.mapper;
+
+import com.lsoria.qrsec.domain.dto.AccessEventDTO;
+import com.lsoria.qrsec.domain.model.AccessEvent;
+
+import org.mapstruct.InjectionStrategy;
+import org.mapstruct.Mapper;
+import org.mapstruct.MappingConstants;
+import org.mapstruct.ReportingPolicy;
+
+@Mapper(componentModel = MappingConstants.ComponentModel.SPRING, injectionStrategy = InjectionStrategy.FIELD, unmappedTargetPolicy = ReportingPolicy.IGNORE)
+public interface AccessEventMapper {
+
+    AccessEventDTO accessEventToAccessEventDTO(AccessEvent accessEvent);
+
+}
@@ -0,0 +1,28 @@
+package com.lsoria.qrsec.domain.event;
+
+/*
+    A document changed in MongoDB, on this node or any other one. In process caches drop or reload what they hold for it.
+    - collection: users, invites or guests
+    - id: the document's id, null when anything may have changed (events were lost) and caches must start over
+ */
+public record EntityChangedEvent(String collection, String id, boolean deleted) {
+
+    public static EntityChangedEvent everything() {
+
+        return new EntityChangedEvent(null, null, false);
+
+    }
+
+    public boolean isEverything() {
+
+        return this.id == null;
+
+    }
+
+    public boolean concerns(String collection) {
+
+        return this.id == null || collection.equals(this.collection);
+
+    }
+
+}
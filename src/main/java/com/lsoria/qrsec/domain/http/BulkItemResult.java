@@ -0,0 +1,49 @@
+package com.lsoria.qrsec.domain.http;
+
+import java.util.function.Function;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+    Outcome of one item of a bulk request, in the order they were sent.
+    - status: HTTP status the item would have got on its own (201 created, 400 invalid, 409 conflict, 500 failed)
+    - item: the stored item when it was created
+    - error: why it was not, null otherwise
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkItemResult<T> {
+
+    private int index;
+    private int status;
+    private T item;
+    private String error;
+
+    public static <T> BulkItemResult<T> created(int index, T item) {
+
+        return new BulkItemResult<>(index, 201, item, null);
+
+    }
+
+    public static <T> BulkItemResult<T> failed(int index, int status, String error) {
+
+        return new BulkItemResult<>(index, status, null, error);
+
+    }
+
+    public boolean isCreated() {
+
+        return this.status == 201;
+
+    }
+
+    public <R> BulkItemResult<R> map(Function<T, R> mapper) {
+
+        return new BulkItemResult<>(this.index, this.status, this.item == null ? null : mapper.apply(this.item), this.error);
+
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.lsoria.qrsec.domain.http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+    A keyset page: the content and the cursor (id of the last element) to ask for the next one, null on the last page.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CursorPage<T> {
+
+    private List<T> content = new ArrayList<>();
+    private String nextCursor;
+
+    // Builds the page from a query that asked for limit + 1 elements
+    public static <T> CursorPage<T> of(List<T> fetched, int limit, Function<T, String> id) {
+
+        if (fetched.size() <= limit) {
+            return new CursorPage<>(fetched, null);
+        }
+
+        List<T> content = new ArrayList<>(fetched.subList(0, limit));
+
+        return new CursorPage<>(content, id.apply(content.get(content.size() - 1)));
+
+    }
+
+    /*
+    Union of keyset pages queried with the same cursor and limit, deduplicated by id.
+    The first limit ids of the union are always within the first limit ids of each page.
+    */
+    public static <T> CursorPage<T> union(List<CursorPage<T>> pages, int limit, Function<T, String> id) {
+
+        TreeMap<String, T> elements = new TreeMap<>();
+        boolean hasNext = false;
+        for (CursorPage<T> page : pages) {
+            for (T element : page.getContent()) {
+                elements.putIfAbsent(id.apply(element), element);
+            }
+            hasNext |= page.hasNext();
+        }
+
+        List<T> content = new ArrayList<>(elements.values());
+        if (content.size() > limit) {
+            content = new ArrayList<>(content.subList(0, limit));
+            hasNext = true;
+        }
+
+        return new CursorPage<>(content, hasNext ? id.apply(content.get(content.size() - 1)) : null);
+
+    }
+
+    public boolean hasNext() {
+        return this.nextCursor != null;
+    }
+
+}
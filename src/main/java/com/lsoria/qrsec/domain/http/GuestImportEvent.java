@@ -0,0 +1,44 @@
+package com.lsoria.qrsec.domain.http;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+    One line of the NDJSON answer of a guest import, written while the upload is read.
+    - error: a row that was not imported (line of the upload and why)
+    - progress: totals after each applied batch
+    - done: the final totals
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class GuestImportEvent {
+
+    public static final String ERROR = "error";
+    public static final String PROGRESS = "progress";
+    public static final String DONE = "done";
+
+    private String type;
+    private Long line;
+    private String error;
+    private Long read;
+    private Long inserted;
+    private Long updated;
+    private Long failed;
+
+    public static GuestImportEvent error(long line, String error) {
+
+        return new GuestImportEvent(ERROR, line, error, null, null, null, null);
+
+    }
+
+    public static GuestImportEvent totals(String type, long read, long inserted, long updated, long failed) {
+
+        return new GuestImportEvent(type, null, null, read, inserted, updated, failed);
+
+    }
+
+}
@@ -3,5 +3,6 @@ package com.lsoria.qrsec.domain.http;
 public class Headers {
 
     public static final String EMAIL = "X-Email";
+    public static final String NEXT_CURSOR = "X-Next-Cursor";
 
 }
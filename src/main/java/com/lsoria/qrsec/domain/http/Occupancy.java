@@ -0,0 +1,9 @@
+package com.lsoria.qrsec.domain.http;
+
+import java.time.LocalDateTime;
+
+/*
+    One period of an occupancy range: what happened in it and how many visitors were inside when it ended.
+ */
+public record Occupancy(LocalDateTime start, long arrivals, long departures, long inside) {
+}
@@ -0,0 +1,37 @@
+package com.lsoria.qrsec.domain.model;
+
+import java.time.LocalDateTime;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.TimeSeries;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
+
+/*
+    One action recorded at the gate over an invite, appended to a time series collection and never updated.
+    The invite only keeps the latest arrival and departure, the history of recurring invites lives here.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "access_events")
+@TimeSeries(timeField = "timestamp", metaField = "inviteId", granularity = Granularity.SECONDS)
+public class AccessEvent {
+
+    @Id
+    private String id;
+    @Field("invite_id")
+    private String inviteId;
+    // Guest that went through the gate, when the guard picked one
+    @Field("guest_id")
+    private String guestId;
+    // Email of the user that recorded the action
+    private String guard;
+    private String action;
+    private LocalDateTime timestamp;
+
+}
@@ -1,5 +1,7 @@
 package com.lsoria.qrsec.domain.model;
 
+import java.util.Objects;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -21,4 +23,20 @@ public class Address {
     private House house;
     private Location location;
 
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Address address)) {
+            return false;
+        }
+        return this.id != null && this.id.equals(address.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(this.id);
+    }
+
 }
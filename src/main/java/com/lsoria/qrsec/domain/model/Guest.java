@@ -1,6 +1,7 @@
 package com.lsoria.qrsec.domain.model;
 
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 
 import lombok.AllArgsConstructor;
@@ -30,4 +31,20 @@ public class Guest {
     @DocumentReference
     private Set<User> owners = new HashSet<>();
 
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Guest guest)) {
+            return false;
+        }
+        return this.id != null && this.id.equals(guest.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(this.id);
+    }
+
 }
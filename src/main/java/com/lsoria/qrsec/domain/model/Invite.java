@@ -3,15 +3,20 @@ package com.lsoria.qrsec.domain.model;
 import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import org.springframework.data.annotation.CreatedBy;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.DocumentReference;
 import org.springframework.data.mongodb.core.mapping.Field;
@@ -20,6 +25,7 @@ import org.springframework.data.mongodb.core.mapping.Field;
 @AllArgsConstructor
 @NoArgsConstructor
 @Document(collection = "invites")
+@CompoundIndex(name = "days_enabled", def = "{'days': 1, 'enabled': 1}")
 public class Invite {
 
     @Id
@@ -49,5 +55,59 @@ public class Invite {
     @Field("last_modified_at")
     private LocalDateTime lastModifiedAt;
     private Boolean enabled = false;
+    /*
+    Set to lastModifiedAt by every change that affects the gate checks (edit, departure, enable, disable): QR tokens
+    issued before it carry an older schedule, departure or state and are rejected.
+    */
+    @Field("tokens_valid_from")
+    private LocalDateTime tokensValidFrom;
+    /*
+    Incremented by every targeted update. An owner edit only applies while the invite still has the version it was
+    read with. Not @Version: invites stored before it have no version, null matches them.
+    */
+    private Long version;
+    @Transient
+    @JsonIgnore
+    @ToString.Exclude
+    private InviteSchedule schedule;
+    // Signed QR token, issued when the invite is returned to its owner (never stored)
+    @Transient
+    @ToString.Exclude
+    private String token;
+
+    public void setDays(Set<String> days) {
+        this.days = days;
+        this.schedule = null;
+    }
+
+    public void setHours(List<List<String>> hours) {
+        this.hours = hours;
+        this.schedule = null;
+    }
+
+    // Compiled on first use after days or hours change, normally when the invite is saved or loaded
+    public InviteSchedule getSchedule() {
+        if (this.schedule == null) {
+            this.schedule = InviteSchedule.compile(this.days, this.hours);
+        }
+        return this.schedule;
+    }
+
+    // Identity is the id, so hashing an Invite never walks its owner, guests and hours. Without id it is only equal to itself
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Invite invite)) {
+            return false;
+        }
+        return this.id != null && this.id.equals(invite.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(this.id);
+    }
 
 }
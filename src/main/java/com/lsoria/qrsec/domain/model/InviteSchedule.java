@@ -0,0 +1,184 @@
+package com.lsoria.qrsec.domain.model;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/*
+    Compiled form of an Invite's days and hours.
+    - days: bitmask where bit 0 is Sunday and bit 6 is Saturday (same numbering as Invite.days)
+    - hours: start/end minute-of-day pairs sorted by start, so a check is a few integer comparisons
+ */
+public final class InviteSchedule {
+
+    public static final int ALL_DAYS = 0b1111111;
+
+    private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final int dayMask;
+    private final int[] startMinutes;
+    private final int[] endMinutes;
+    private final boolean allDay;
+
+    public InviteSchedule(int dayMask, int[] startMinutes, int[] endMinutes, boolean allDay) {
+        this.dayMask = dayMask;
+        this.startMinutes = startMinutes;
+        this.endMinutes = endMinutes;
+        this.allDay = allDay;
+    }
+
+    public static InviteSchedule compile(Collection<String> days, List<List<String>> hours) {
+
+        int dayMask = 0;
+        if (days == null || days.isEmpty()) {
+            dayMask = ALL_DAYS;
+        } else {
+            for (String day : days) {
+                int dayAsInt = parseDay(day);
+                if (dayAsInt >= 0) {
+                    dayMask |= 1 << dayAsInt;
+                }
+            }
+        }
+
+        // An empty list of hours means the invite is valid the whole day
+        if (hours == null || hours.isEmpty()) {
+            return new InviteSchedule(dayMask, new int[0], new int[0], true);
+        }
+
+        long[] ranges = new long[hours.size()];
+        int size = 0;
+        for (List<String> range : hours) {
+            if (range == null || range.size() < 2) {
+                continue;
+            }
+            int start = parseMinuteOfDay(range.get(0));
+            int end = parseMinuteOfDay(range.get(1));
+            if (start < 0 || end < 0) {
+                continue;
+            }
+            ranges[size++] = ((long) start << 32) | end;
+        }
+        Arrays.sort(ranges, 0, size);
+
+        int[] startMinutes = new int[size];
+        int[] endMinutes = new int[size];
+        for (int i = 0; i < size; i++) {
+            startMinutes[i] = (int) (ranges[i] >>> 32);
+            endMinutes[i] = (int) ranges[i];
+        }
+
+        return new InviteSchedule(dayMask, startMinutes, endMinutes, false);
+
+    }
+
+    // Sunday is 0 and Saturday is 6
+    public static int dayOfWeek(LocalDateTime timestamp) {
+
+        return timestamp.getDayOfWeek().getValue() % 7;
+
+    }
+
+    public boolean allowsDay(LocalDateTime timestamp) {
+
+        return allowsDay(dayOfWeek(timestamp));
+
+    }
+
+    public boolean allowsDay(int dayOfWeek) {
+
+        return dayOfWeek >= 0 && dayOfWeek <= 6 && (this.dayMask & (1 << dayOfWeek)) != 0;
+
+    }
+
+    // The timestamp must be strictly after the start and strictly before the end of one of the ranges
+    public boolean allowsTime(LocalDateTime timestamp) {
+
+        if (this.allDay) {
+            return true;
+        }
+
+        long nanoOfDay = timestamp.getHour() * 60L * NANOS_PER_MINUTE
+                + timestamp.getMinute() * NANOS_PER_MINUTE
+                + timestamp.getSecond() * NANOS_PER_SECOND
+                + timestamp.getNano();
+
+        for (int i = 0; i < this.startMinutes.length; i++) {
+            long start = this.startMinutes[i] * NANOS_PER_MINUTE;
+            if (nanoOfDay <= start) {
+                // Ranges are sorted by start, none of the next ones can contain the timestamp
+                return false;
+            }
+            if (nanoOfDay < this.endMinutes[i] * NANOS_PER_MINUTE) {
+                return true;
+            }
+        }
+
+        return false;
+
+    }
+
+    public boolean allows(LocalDateTime timestamp) {
+
+        return allowsDay(timestamp) && allowsTime(timestamp);
+
+    }
+
+    public int getDayMask() {
+        return this.dayMask;
+    }
+
+    public boolean isAllDay() {
+        return this.allDay;
+    }
+
+    public int getRangeCount() {
+        return this.startMinutes.length;
+    }
+
+    public int getStartMinute(int index) {
+        return this.startMinutes[index];
+    }
+
+    public int getEndMinute(int index) {
+        return this.endMinutes[index];
+    }
+
+    private static int parseDay(String day) {
+
+        if (day == null || day.length() != 1) {
+            return -1;
+        }
+
+        int dayAsInt = day.charAt(0) - '0';
+
+        return dayAsInt >= 0 && dayAsInt <= 6 ? dayAsInt : -1;
+
+    }
+
+    // Parses "HH:mm" without going through DateTimeFormatter, returns -1 if the value is malformed
+    private static int parseMinuteOfDay(String time) {
+
+        if (time == null || time.length() != 5 || time.charAt(2) != ':') {
+            return -1;
+        }
+
+        int hour = digit(time.charAt(0)) * 10 + digit(time.charAt(1));
+        int minute = digit(time.charAt(3)) * 10 + digit(time.charAt(4));
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+            return -1;
+        }
+
+        return hour * 60 + minute;
+
+    }
+
+    private static int digit(char character) {
+
+        return character >= '0' && character <= '9' ? character - '0' : -100;
+
+    }
+
+}
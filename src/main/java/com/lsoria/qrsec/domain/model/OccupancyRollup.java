@@ -0,0 +1,33 @@
+package com.lsoria.qrsec.domain.model;
+
+import java.time.LocalDateTime;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/*
+    Arrivals and departures recorded in one hour or one day (granularity), counted with $inc as they happen.
+    The id is the granularity and the start of the period, e.g. hour:2024-09-23T14:00
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "occupancy_rollups")
+@CompoundIndex(name = "granularity_start", def = "{'granularity': 1, 'start': 1}")
+public class OccupancyRollup {
+
+    public static final String HOUR = "hour";
+    public static final String DAY = "day";
+
+    @Id
+    private String id;
+    private String granularity;
+    private LocalDateTime start;
+    private long arrivals;
+    private long departures;
+
+}
@@ -0,0 +1,9 @@
+package com.lsoria.qrsec.repository;
+
+import com.lsoria.qrsec.domain.model.AccessEvent;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface AccessEventRepository extends MongoRepository<AccessEvent, String> {
+
+}
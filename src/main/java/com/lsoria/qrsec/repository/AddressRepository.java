@@ -1,14 +1,20 @@
 package com.lsoria.qrsec.repository;
 
+import java.util.List;
 import java.util.Optional;
 
 import com.lsoria.qrsec.domain.model.Address;
 import com.lsoria.qrsec.domain.model.House;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
 public interface AddressRepository extends MongoRepository<Address, String> {
 
     Optional<Address> findByHouse(House house);
 
+    List<Address> findAllByOrderByIdAsc(Limit limit);
+
+    List<Address> findByIdGreaterThanOrderByIdAsc(String id, Limit limit);
+
 }
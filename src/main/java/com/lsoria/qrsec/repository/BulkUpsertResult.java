@@ -0,0 +1,9 @@
+package com.lsoria.qrsec.repository;
+
+import java.util.Map;
+
+/*
+    Outcome of an unordered bulk upsert: documents inserted, existing documents matched and the failed ones by index.
+ */
+public record BulkUpsertResult(int inserted, int matched, Map<Integer, WriteFailure> failures) {
+}
@@ -0,0 +1,184 @@
+package com.lsoria.qrsec.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.lsoria.qrsec.domain.model.Address;
+import com.lsoria.qrsec.domain.model.Guest;
+import com.lsoria.qrsec.domain.model.Invite;
+import com.lsoria.qrsec.domain.model.User;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+/*
+    Resolves @DocumentReference fields for a whole batch of raw documents at once.
+    Reading an entity through the repository resolves every reference with its own query (N+1), here the
+    referenced ids are gathered first and each referenced collection is read once with an $in query.
+ */
+@Component
+public class DocumentReferenceResolver {
+
+    private static final String ID = "_id";
+    private static final String INVITE_OWNER = "owner";
+    private static final String INVITE_GUESTS = "guests";
+    private static final String GUEST_OWNERS = "owners";
+    private static final String USER_ADDRESS = "address";
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    public List<Invite> resolveInvites(List<Document> inviteDocuments) {
+
+        Set<Object> guestIds = new LinkedHashSet<>();
+        Set<Object> userIds = new LinkedHashSet<>();
+        for (Document invite : inviteDocuments) {
+            addReference(userIds, invite.get(INVITE_OWNER));
+            addReferences(guestIds, invite.get(INVITE_GUESTS));
+        }
+
+        List<Document> guestDocuments = findByIds(Guest.class, guestIds);
+        for (Document guest : guestDocuments) {
+            addReferences(userIds, guest.get(GUEST_OWNERS));
+        }
+
+        Map<String, User> users = readUsers(findByIds(User.class, userIds));
+        Map<String, Guest> guests = readGuests(guestDocuments, users);
+
+        MongoConverter converter = mongoTemplate.getConverter();
+        List<Invite> invites = new ArrayList<>(inviteDocuments.size());
+        for (Document document : inviteDocuments) {
+            Object owner = document.remove(INVITE_OWNER);
+            Object guestReferences = document.remove(INVITE_GUESTS);
+
+            Invite invite = converter.read(Invite.class, document);
+            invite.setOwner(owner == null ? null : users.get(owner.toString()));
+            invite.setGuests(collect(guestReferences, guests));
+
+            invites.add(invite);
+        }
+
+        return invites;
+
+    }
+
+    public List<Guest> resolveGuests(List<Document> guestDocuments) {
+
+        Set<Object> userIds = new LinkedHashSet<>();
+        for (Document guest : guestDocuments) {
+            addReferences(userIds, guest.get(GUEST_OWNERS));
+        }
+
+        Map<String, Guest> guests = readGuests(guestDocuments, readUsers(findByIds(User.class, userIds)));
+
+        List<Guest> resolvedGuests = new ArrayList<>(guestDocuments.size());
+        for (Document document : guestDocuments) {
+            resolvedGuests.add(guests.get(document.get(ID).toString()));
+        }
+
+        return resolvedGuests;
+
+    }
+
+    private Map<String, Guest> readGuests(List<Document> guestDocuments, Map<String, User> users) {
+
+        MongoConverter converter = mongoTemplate.getConverter();
+        Map<String, Guest> guests = new HashMap<>();
+        for (Document document : guestDocuments) {
+            String id = document.get(ID).toString();
+            Object owners = document.remove(GUEST_OWNERS);
+
+            Guest guest = converter.read(Guest.class, document);
+            guest.setOwners(collect(owners, users));
+
+            guests.put(id, guest);
+        }
+
+        return guests;
+
+    }
+
+    private Map<String, User> readUsers(List<Document> userDocuments) {
+
+        Set<Object> addressIds = new LinkedHashSet<>();
+        for (Document user : userDocuments) {
+            addReference(addressIds, user.get(USER_ADDRESS));
+        }
+
+        MongoConverter converter = mongoTemplate.getConverter();
+        Map<String, Address> addresses = new HashMap<>();
+        for (Document document : findByIds(Address.class, addressIds)) {
+            addresses.put(document.get(ID).toString(), converter.read(Address.class, document));
+        }
+
+        Map<String, User> users = new HashMap<>();
+        for (Document document : userDocuments) {
+            String id = document.get(ID).toString();
+            Object address = document.remove(USER_ADDRESS);
+
+            User user = converter.read(User.class, document);
+            user.setAddress(address == null ? null : addresses.get(address.toString()));
+
+            users.put(id, user);
+        }
+
+        return users;
+
+    }
+
+    private List<Document> findByIds(Class<?> type, Collection<Object> ids) {
+
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        return mongoTemplate.find(Query.query(Criteria.where(ID).in(ids)), Document.class, mongoTemplate.getCollectionName(type));
+
+    }
+
+    private static void addReference(Set<Object> ids, Object reference) {
+
+        if (reference != null) {
+            ids.add(reference);
+        }
+
+    }
+
+    private static void addReferences(Set<Object> ids, Object references) {
+
+        if (references instanceof Collection<?> collection) {
+            for (Object reference : collection) {
+                addReference(ids, reference);
+            }
+        }
+
+    }
+
+    // References to documents that no longer exist are skipped
+    private static <T> Set<T> collect(Object references, Map<String, T> resolved) {
+
+        Set<T> entities = new LinkedHashSet<>();
+        if (references instanceof Collection<?> collection) {
+            for (Object reference : collection) {
+                T entity = reference == null ? null : resolved.get(reference.toString());
+                if (entity != null) {
+                    entities.add(entity);
+                }
+            }
+        }
+
+        return entities;
+
+    }
+
+}
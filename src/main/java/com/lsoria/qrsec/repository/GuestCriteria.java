@@ -0,0 +1,21 @@
+package com.lsoria.qrsec.repository;
+
+import com.lsoria.qrsec.domain.model.User;
+
+import org.springframework.data.mongodb.core.query.Criteria;
+
+/*
+    Criteria over the raw guests collection, values are written as they are stored (references as ObjectId).
+ */
+public final class GuestCriteria {
+
+    private GuestCriteria() {
+    }
+
+    public static Criteria ownedBy(User owner) {
+
+        return Criteria.where("owners").is(Queries.storedId(owner.getId()));
+
+    }
+
+}
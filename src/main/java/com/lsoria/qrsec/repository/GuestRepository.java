@@ -8,7 +8,7 @@ import com.lsoria.qrsec.domain.model.User;
 
 import org.springframework.data.mongodb.repository.MongoRepository;
 
-public interface GuestRepository extends MongoRepository<Guest, String> {
+public interface GuestRepository extends MongoRepository<Guest, String>, GuestRepositoryCustom {
 
     public Optional<Guest> findByDni(String dni);
 
@@ -0,0 +1,41 @@
+package com.lsoria.qrsec.repository;
+
+import java.util.List;
+import java.util.Optional;
+
+import com.lsoria.qrsec.domain.model.Guest;
+import com.lsoria.qrsec.domain.model.User;
+
+import org.springframework.data.mongodb.core.query.Query;
+
+public interface GuestRepositoryCustom {
+
+    /*
+    Finds the Guests matching the query with their owners and owners' addresses resolved in bulk.
+    */
+    public List<Guest> findAllResolved(Query query);
+
+    /*
+    Upserts the Guests by dni in one unordered bulk write, adding the owner to each of them.
+    The failures are keyed by the index of the Guest in the list, the other Guests are written anyway.
+    */
+    public BulkUpsertResult upsertAllByDni(List<Guest> guests, User owner);
+
+    /*
+    Upserts the Guest by dni adding the owner in one round trip, returns the stored Guest with its owners resolved.
+    The names and phone of a Guest that already exists are kept.
+    */
+    public Guest upsertByDni(Guest guest, User owner);
+
+    /*
+    Removes the owner from the Guest's owners if it is one of them. Returns how many owners are left,
+    empty when the Guest doesn't exist or isn't owned by the owner.
+    */
+    public Optional<Integer> pullOwner(String id, User owner);
+
+    /*
+    Deletes the Guest only if it has no owners, an owner added meanwhile keeps it. Returns whether it was deleted.
+    */
+    public boolean deleteIfOwnerless(String id);
+
+}
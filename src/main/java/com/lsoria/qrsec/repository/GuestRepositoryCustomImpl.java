@@ -0,0 +1,123 @@
+package com.lsoria.qrsec.repository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.lsoria.qrsec.domain.model.Guest;
+import com.lsoria.qrsec.domain.model.User;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+public class GuestRepositoryCustomImpl implements GuestRepositoryCustom {
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    @Autowired
+    DocumentReferenceResolver documentReferenceResolver;
+
+    @Override
+    public List<Guest> findAllResolved(Query query) {
+
+        List<Document> documents = mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(Guest.class));
+
+        return documentReferenceResolver.resolveGuests(documents);
+
+    }
+
+    @Override
+    public BulkUpsertResult upsertAllByDni(List<Guest> guests, User owner) {
+
+        Map<Integer, WriteFailure> failures = new HashMap<>();
+        if (guests.isEmpty()) {
+            return new BulkUpsertResult(0, 0, failures);
+        }
+
+        // Raw collection: the update is written as it is stored, owners as ObjectId references
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, mongoTemplate.getCollectionName(Guest.class));
+        for (Guest guest : guests) {
+            operations.upsert(GuestUpserts.byDni(guest.getDni()), GuestUpserts.addOwner(guest, owner));
+        }
+
+        BulkWriteResult result;
+        try {
+
+            result = operations.execute();
+
+        } catch (BulkOperationException exception) {
+
+            for (BulkWriteError error : exception.getErrors()) {
+                boolean duplicateKey = ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY;
+                failures.put(error.getIndex(), new WriteFailure(duplicateKey, error.getMessage()));
+            }
+            result = exception.getResult();
+
+        }
+
+        return new BulkUpsertResult(result.getUpserts().size(), result.getMatchedCount(), failures);
+
+    }
+
+    @Override
+    public Guest upsertByDni(Guest guest, User owner) {
+
+        FindAndModifyOptions options = FindAndModifyOptions.options().upsert(true).returnNew(true);
+        String collection = mongoTemplate.getCollectionName(Guest.class);
+
+        Document stored;
+        try {
+
+            stored = mongoTemplate.findAndModify(GuestUpserts.byDni(guest.getDni()), GuestUpserts.addOwner(guest, owner), options, Document.class, collection);
+
+        } catch (DuplicateKeyException exception) {
+
+            // Another owner inserted the same dni meanwhile, now it exists and the upsert updates it
+            stored = mongoTemplate.findAndModify(GuestUpserts.byDni(guest.getDni()), GuestUpserts.addOwner(guest, owner), options, Document.class, collection);
+
+        }
+
+        return documentReferenceResolver.resolveGuests(List.of(stored)).get(0);
+
+    }
+
+    @Override
+    public Optional<Integer> pullOwner(String id, User owner) {
+
+        Query query = new Query(Criteria.where("_id").is(Queries.storedId(id))).addCriteria(GuestCriteria.ownedBy(owner));
+        query.fields().include("owners");
+        Update update = new Update().pull("owners", Queries.storedId(owner.getId()));
+
+        Document guest = mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), Document.class, mongoTemplate.getCollectionName(Guest.class));
+        if (guest == null) {
+            return Optional.empty();
+        }
+        List<?> owners = guest.getList("owners", Object.class);
+
+        return Optional.of(owners == null ? 0 : owners.size());
+
+    }
+
+    @Override
+    public boolean deleteIfOwnerless(String id) {
+
+        Query query = new Query(Criteria.where("_id").is(Queries.storedId(id)).and("owners").size(0));
+
+        return mongoTemplate.remove(query, mongoTemplate.getCollectionName(Guest.class)).getDeletedCount() > 0;
+
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.lsoria.qrsec.repository;
+
+import com.lsoria.qrsec.domain.model.Guest;
+import com.lsoria.qrsec.domain.model.User;
+
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+/*
+    Upsert of a guest keyed by its dni (unique index) over the raw guests collection: the owner is added to owners
+    with $addToSet, so the same guest can be stored by several owners at once without reading it first.
+    The names and phone are only written when the upsert inserts the guest: an existing guest is shared by its owners,
+    another owner storing the same dni must not rewrite what the others see.
+ */
+public final class GuestUpserts {
+
+    private GuestUpserts() {
+    }
+
+    public static Query byDni(String dni) {
+
+        return new Query(Criteria.where("dni").is(dni));
+
+    }
+
+    public static Update addOwner(Guest guest, User owner) {
+
+        Update update = new Update().addToSet("owners", Queries.storedId(owner.getId()));
+        if (guest.getFirstName() != null) {
+            update.setOnInsert("first_name", guest.getFirstName());
+        }
+        if (guest.getLastName() != null) {
+            update.setOnInsert("last_name", guest.getLastName());
+        }
+        if (guest.getPhone() != null) {
+            update.setOnInsert("phone", guest.getPhone());
+        }
+
+        return update;
+
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.lsoria.qrsec.repository;
+
+import com.lsoria.qrsec.domain.model.User;
+
+import org.springframework.data.mongodb.core.query.Criteria;
+
+/*
+    Criteria over the raw invites collection, values are written as they are stored (references as ObjectId).
+ */
+public final class InviteCriteria {
+
+    private InviteCriteria() {
+    }
+
+    // Enabled invites that either have no days configured (valid every day) or include the given day, uses the days_enabled index
+    public static Criteria enabledForDay(int day) {
+
+        return Criteria.where("enabled").is(true).orOperator(
+                Criteria.where("days").is(Integer.toString(day)),
+                Criteria.where("days").size(0),
+                Criteria.where("days").exists(false)
+        );
+
+    }
+
+    public static Criteria ownedBy(User owner) {
+
+        return Criteria.where("owner").is(Queries.storedId(owner.getId()));
+
+    }
+
+}
@@ -7,7 +7,7 @@ import com.lsoria.qrsec.domain.model.User;
 
 import org.springframework.data.mongodb.repository.MongoRepository;
 
-public interface InviteRepository extends MongoRepository<Invite, String> {
+public interface InviteRepository extends MongoRepository<Invite, String>, InviteRepositoryCustom {
 
     public List<Invite> findByOwner(User owner);
 
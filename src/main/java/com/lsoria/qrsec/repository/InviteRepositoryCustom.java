@@ -0,0 +1,40 @@
+package com.lsoria.qrsec.repository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.lsoria.qrsec.domain.model.Invite;
+
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+public interface InviteRepositoryCustom {
+
+    /*
+    Finds the Invites matching the query with their guests, owner, guests' owners and owners' addresses
+    resolved in bulk: one query per referenced collection, no matter how many Invites or Guests there are.
+    */
+    public List<Invite> findAllResolved(Query query);
+
+    /*
+    Inserts the Invites (with their ids already assigned) in one unordered bulk write: a failing Invite doesn't stop
+    the others. Returns the failures by position in the list, the write error of each one.
+    */
+    public Map<Integer, WriteFailure> insertAllUnordered(List<Invite> invites);
+
+    /*
+    Applies the update (property names) and increments the version only if the Invite still has the expected version,
+    a null version matches Invites stored before versions existed. Returns the updated Invite, empty when it
+    changed since it was read or doesn't exist.
+    */
+    public Optional<Invite> compareAndSet(String id, Long expectedVersion, Update update);
+
+    /*
+    Applies the update (property names) and increments the version whatever the version is, for updates that don't
+    depend on the rest of the Invite: last-writer-wins for the fields in the update. Returns the updated Invite, empty
+    when it doesn't exist.
+    */
+    public Optional<Invite> apply(String id, Update update);
+
+}
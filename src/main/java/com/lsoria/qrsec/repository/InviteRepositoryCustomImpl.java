@@ -0,0 +1,82 @@
+package com.lsoria.qrsec.repository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.lsoria.qrsec.domain.model.Invite;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+public class InviteRepositoryCustomImpl implements InviteRepositoryCustom {
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    @Autowired
+    DocumentReferenceResolver documentReferenceResolver;
+
+    @Override
+    public List<Invite> findAllResolved(Query query) {
+
+        List<Document> documents = mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(Invite.class));
+
+        return documentReferenceResolver.resolveInvites(documents);
+
+    }
+
+    @Override
+    public Map<Integer, WriteFailure> insertAllUnordered(List<Invite> invites) {
+
+        Map<Integer, WriteFailure> failures = new HashMap<>();
+        if (invites.isEmpty()) {
+            return failures;
+        }
+
+        try {
+
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Invite.class).insert(invites).execute();
+
+        } catch (BulkOperationException exception) {
+
+            for (BulkWriteError error : exception.getErrors()) {
+                boolean duplicateKey = ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY;
+                failures.put(error.getIndex(), new WriteFailure(duplicateKey, error.getMessage()));
+            }
+
+        }
+
+        return failures;
+
+    }
+
+    @Override
+    public Optional<Invite> compareAndSet(String id, Long expectedVersion, Update update) {
+
+        Query query = new Query(Criteria.where("id").is(id).and("version").is(expectedVersion));
+
+        return Optional.ofNullable(mongoTemplate.findAndModify(query, update.inc("version", 1), FindAndModifyOptions.options().returnNew(true), Invite.class));
+
+    }
+
+    @Override
+    public Optional<Invite> apply(String id, Update update) {
+
+        Query query = new Query(Criteria.where("id").is(id));
+
+        return Optional.ofNullable(mongoTemplate.findAndModify(query, update.inc("version", 1), FindAndModifyOptions.options().returnNew(true), Invite.class));
+
+    }
+
+}
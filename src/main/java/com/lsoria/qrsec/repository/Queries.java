@@ -0,0 +1,40 @@
+package com.lsoria.qrsec.repository;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+/*
+    Helpers for queries written against the raw collections, values are written as they are stored.
+ */
+public final class Queries {
+
+    private static final String ID = "_id";
+
+    private Queries() {
+    }
+
+    // String ids that look like ObjectIds are stored as ObjectIds, both as _id and as references
+    public static Object storedId(String id) {
+
+        return ObjectId.isValid(id) ? new ObjectId(id) : id;
+
+    }
+
+    /*
+    Keyset page: documents after the cursor (an id) sorted by _id, a null criteria matches every document.
+    One extra document is requested so the caller knows whether there is a next page.
+    */
+    public static Query page(Criteria criteria, String cursor, int limit) {
+
+        Query query = criteria == null ? new Query() : new Query(criteria);
+        if (cursor != null && !cursor.isBlank()) {
+            query.addCriteria(Criteria.where(ID).gt(storedId(cursor)));
+        }
+
+        return query.with(Sort.by(Sort.Direction.ASC, ID)).limit(limit + 1);
+
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.lsoria.qrsec.repository;
+
+import com.lsoria.qrsec.domain.model.Invite;
+
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Mono;
+
+/*
+    Reactive access to invites for the gate. References are not resolved by the reactive driver,
+    so owner and guests are left out of the projection: the gate only needs days, hours and times.
+ */
+public interface ReactiveInviteRepository extends ReactiveMongoRepository<Invite, String> {
+
+    @Query(value = "{ '_id': ?0 }", fields = "{ 'owner': 0, 'guests': 0 }")
+    Mono<Invite> findForGateById(String id);
+
+}
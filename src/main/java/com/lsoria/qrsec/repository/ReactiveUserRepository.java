@@ -0,0 +1,17 @@
+package com.lsoria.qrsec.repository;
+
+import com.lsoria.qrsec.domain.model.User;
+
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Mono;
+
+/*
+    Reactive access to users for the gate, the address reference is left out (it is not resolved by the reactive driver).
+ */
+public interface ReactiveUserRepository extends ReactiveMongoRepository<User, String> {
+
+    @Query(value = "{ 'email': ?0 }", fields = "{ 'address': 0 }")
+    Mono<User> findForGateByUsername(String username);
+
+}
@@ -1,13 +1,19 @@
 package com.lsoria.qrsec.repository;
 
+import java.util.List;
 import java.util.Optional;
 
 import com.lsoria.qrsec.domain.model.User;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
 public interface UserRepository extends MongoRepository<User, String> {
 
     Optional<User> findByUsername(String username);
 
+    List<User> findAllByOrderByIdAsc(Limit limit);
+
+    List<User> findByIdGreaterThanOrderByIdAsc(String id, Limit limit);
+
 }
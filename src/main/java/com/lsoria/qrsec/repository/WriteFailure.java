@@ -0,0 +1,7 @@
+package com.lsoria.qrsec.repository;
+
+/*
+    Why a document of a bulk write was not written, duplicateKey tells a conflict apart from any other error.
+ */
+public record WriteFailure(boolean duplicateKey, String message) {
+}
@@ -0,0 +1,268 @@
+package com.lsoria.qrsec.repository.listener;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import com.lsoria.qrsec.domain.event.EntityChangedEvent;
+import com.lsoria.qrsec.domain.model.Guest;
+import com.lsoria.qrsec.domain.model.Invite;
+import com.lsoria.qrsec.domain.model.User;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+/*
+    Watches users, invites and guests with a single change stream and publishes an EntityChangedEvent for every change,
+    so the in process caches of every node see the writes made by the others.
+    The resume token is saved in change_stream_tokens (at most once per token-save-interval), a restart or a lost
+    connection resumes from it. If it can't resume (the oplog moved past the token) caches are told to start over.
+    Needs a replica set, enabled with qrsec.cache.change-streams.enabled=true.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "qrsec.cache.change-streams.enabled", havingValue = "true")
+public class ChangeStreamPublisher implements SmartLifecycle {
+
+    static final String TOKENS = "change_stream_tokens";
+
+    private static final String STREAM_NAME = "caches";
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(5);
+    // ChangeStreamHistoryLost: the resume token is no longer in the oplog
+    private static final int HISTORY_LOST = 286;
+
+    private final MongoTemplate mongoTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Duration tokenSaveInterval;
+    private final List<String> collections;
+
+    private volatile boolean running;
+    private volatile MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor;
+    private Thread thread;
+
+    private BsonDocument resumeToken;
+    private Instant tokenSavedAt = Instant.EPOCH;
+
+    public ChangeStreamPublisher(
+            MongoTemplate mongoTemplate,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${qrsec.cache.change-streams.token-save-interval:1s}") Duration tokenSaveInterval
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.eventPublisher = eventPublisher;
+        this.tokenSaveInterval = tokenSaveInterval;
+        this.collections = List.of(
+                mongoTemplate.getCollectionName(User.class),
+                mongoTemplate.getCollectionName(Invite.class),
+                mongoTemplate.getCollectionName(Guest.class)
+        );
+    }
+
+    @Override
+    public synchronized void start() {
+
+        if (this.running) {
+            return;
+        }
+
+        this.running = true;
+        this.resumeToken = loadToken();
+        this.thread = Thread.ofPlatform().name("change-stream-" + STREAM_NAME).daemon().start(this::run);
+
+    }
+
+    @Override
+    public synchronized void stop() {
+
+        this.running = false;
+        MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = this.cursor;
+        if (cursor != null) {
+            cursor.close();
+        }
+        if (this.thread != null) {
+            this.thread.interrupt();
+            this.thread = null;
+        }
+
+    }
+
+    @Override
+    public boolean isRunning() {
+
+        return this.running;
+
+    }
+
+    private void run() {
+
+        while (this.running) {
+
+            try {
+
+                watch();
+
+            } catch (RuntimeException exception) {
+
+                // Closing the cursor is how stop() ends the wait for the next change
+                if (!this.running) {
+                    saveToken();
+                    return;
+                }
+
+                if (exception instanceof MongoException mongoException && mongoException.getCode() == HISTORY_LOST) {
+                    log.warn("Change stream can't resume, the oplog no longer has its token. Caches will start over");
+                    this.resumeToken = null;
+                    this.eventPublisher.publishEvent(EntityChangedEvent.everything());
+                } else {
+                    log.error("Change stream failed, retrying in {}.\nMessage: {}.", RETRY_DELAY, exception.getMessage());
+                }
+
+                try {
+                    Thread.sleep(RETRY_DELAY);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+
+            }
+
+        }
+
+    }
+
+    private void watch() {
+
+        var changeStream = this.mongoTemplate.getDb()
+                .watch(List.of(Aggregates.match(Filters.in("ns.coll", this.collections))));
+        if (this.resumeToken != null) {
+            changeStream = changeStream.resumeAfter(this.resumeToken);
+        }
+
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = changeStream.cursor()) {
+
+            this.cursor = cursor;
+            log.info("Watching {} for cache invalidation{}", this.collections, this.resumeToken == null ? "" : ", resumed");
+
+            while (this.running) {
+                ChangeStreamDocument<Document> change = cursor.tryNext();
+                if (cursor.getResumeToken() != null) {
+                    this.resumeToken = cursor.getResumeToken();
+                }
+                if (change == null) {
+                    continue;
+                }
+                if (!publish(change)) {
+                    // The stream is over (collection dropped or renamed), start a new one from now
+                    this.resumeToken = null;
+                    return;
+                }
+                saveTokenEvery(this.tokenSaveInterval);
+            }
+
+            saveToken();
+
+        } finally {
+
+            this.cursor = null;
+
+        }
+
+    }
+
+    // False when the change ends the stream
+    private boolean publish(ChangeStreamDocument<Document> change) {
+
+        OperationType operationType = change.getOperationType();
+        if (operationType == OperationType.DROP || operationType == OperationType.RENAME
+                || operationType == OperationType.DROP_DATABASE || operationType == OperationType.INVALIDATE) {
+            this.eventPublisher.publishEvent(EntityChangedEvent.everything());
+            return operationType != OperationType.INVALIDATE;
+        }
+
+        if (change.getNamespace() == null || change.getDocumentKey() == null) {
+            return true;
+        }
+
+        String id = id(change.getDocumentKey().get("_id"));
+        if (id != null) {
+            this.eventPublisher.publishEvent(new EntityChangedEvent(change.getNamespace().getCollectionName(), id, operationType == OperationType.DELETE));
+        }
+
+        return true;
+
+    }
+
+    private BsonDocument loadToken() {
+
+        BsonDocument saved = tokens().find(Filters.eq("_id", STREAM_NAME)).first();
+
+        return saved == null || !saved.isDocument("token") ? null : saved.getDocument("token");
+
+    }
+
+    private void saveToken() {
+
+        try {
+            saveTokenEvery(Duration.ZERO);
+        } catch (RuntimeException exception) {
+            log.warn("Couldn't save the change stream resume token.\nMessage: {}.", exception.getMessage());
+        }
+
+    }
+
+    // Idle streams also move their token forward, it is only saved after changes and on stop
+    private void saveTokenEvery(Duration interval) {
+
+        Instant now = Instant.now();
+        if (this.resumeToken == null || now.isBefore(this.tokenSavedAt.plus(interval))) {
+            return;
+        }
+
+        BsonDocument token = new BsonDocument("_id", new BsonString(STREAM_NAME))
+                .append("token", this.resumeToken)
+                .append("saved_at", new BsonDateTime(now.toEpochMilli()));
+        tokens().replaceOne(Filters.eq("_id", STREAM_NAME), token, new ReplaceOptions().upsert(true));
+        this.tokenSavedAt = now;
+
+    }
+
+    private MongoCollection<BsonDocument> tokens() {
+
+        return this.mongoTemplate.getDb().getCollection(TOKENS, BsonDocument.class);
+
+    }
+
+    private static String id(BsonValue id) {
+
+        if (id == null) {
+            return null;
+        }
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+        if (id.isString()) {
+            return id.asString().getValue();
+        }
+
+        return null;
+
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.lsoria.qrsec.repository.listener;
+
+import com.lsoria.qrsec.domain.model.Invite;
+
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterConvertEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertEvent;
+import org.springframework.stereotype.Component;
+
+/*
+    Compiles the Invite's schedule when it is loaded or saved, so the gate validation never parses
+    days and hours on the request path.
+ */
+@Component
+public class InviteScheduleListener extends AbstractMongoEventListener<Invite> {
+
+    @Override
+    public void onBeforeConvert(BeforeConvertEvent<Invite> event) {
+
+        event.getSource().getSchedule();
+
+    }
+
+    @Override
+    public void onAfterConvert(AfterConvertEvent<Invite> event) {
+
+        event.getSource().getSchedule();
+
+    }
+
+}
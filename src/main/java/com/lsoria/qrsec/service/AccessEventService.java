@@ -0,0 +1,70 @@
+package com.lsoria.qrsec.service;
+
+import java.time.LocalDateTime;
+
+import com.lsoria.qrsec.domain.http.CursorPage;
+import com.lsoria.qrsec.domain.model.AccessEvent;
+import com.lsoria.qrsec.repository.AccessEventRepository;
+import com.lsoria.qrsec.repository.Queries;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Service;
+
+/*
+    Append-only log of the actions recorded at the gate: one small insert per action, no read-modify-write.
+ */
+@Slf4j
+@Service
+public class AccessEventService implements SmartInitializingSingleton {
+
+    @Autowired
+    AccessEventRepository accessEventRepository;
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    // A time series collection has to be created explicitly, the first insert would create a regular one
+    @Override
+    public void afterSingletonsInstantiated() {
+
+        if (mongoTemplate.collectionExists(AccessEvent.class)) {
+            return;
+        }
+
+        try {
+            mongoTemplate.createCollection(AccessEvent.class);
+            log.info("Time series collection {} created", mongoTemplate.getCollectionName(AccessEvent.class));
+        } catch (DataAccessException exception) {
+            // Another node created it meanwhile
+            if (!mongoTemplate.collectionExists(AccessEvent.class)) {
+                throw exception;
+            }
+        }
+
+    }
+
+    public static AccessEvent event(String inviteId, String action, LocalDateTime timestamp, String guard, String guestId) {
+
+        return new AccessEvent(null, inviteId, guestId, guard, action, timestamp);
+
+    }
+
+    public AccessEvent record(String inviteId, String action, LocalDateTime timestamp, String guard, String guestId) {
+
+        return accessEventRepository.insert(event(inviteId, action, timestamp, guard, guestId));
+
+    }
+
+    // Oldest first, in the order they were recorded
+    public CursorPage<AccessEvent> findHistory(String inviteId, String cursor, int limit) {
+
+        return CursorPage.of(mongoTemplate.find(Queries.page(Criteria.where("invite_id").is(inviteId), cursor, limit), AccessEvent.class), limit, AccessEvent::getId);
+
+    }
+
+}
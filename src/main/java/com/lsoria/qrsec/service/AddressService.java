@@ -3,6 +3,7 @@ package com.lsoria.qrsec.service;
 import java.util.List;
 import java.util.Optional;
 
+import com.lsoria.qrsec.domain.http.CursorPage;
 import com.lsoria.qrsec.domain.model.Address;
 import com.lsoria.qrsec.repository.AddressRepository;
 import com.lsoria.qrsec.service.exception.ConflictException;
@@ -11,6 +12,7 @@ import com.lsoria.qrsec.service.exception.NotFoundException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -22,9 +24,13 @@ public class AddressService {
     @Autowired
     AddressRepository addressRepository;
 
-    public List<Address> findAll() {
+    public CursorPage<Address> findAll(String cursor, int limit) {
 
-        return addressRepository.findAll();
+        List<Address> addresses = cursor == null || cursor.isBlank()
+                ? addressRepository.findAllByOrderByIdAsc(Limit.of(limit + 1))
+                : addressRepository.findByIdGreaterThanOrderByIdAsc(cursor, Limit.of(limit + 1));
+
+        return CursorPage.of(addresses, limit, Address::getId);
 
     }
 
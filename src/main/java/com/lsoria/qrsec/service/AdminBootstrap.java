@@ -0,0 +1,83 @@
+package com.lsoria.qrsec.service;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.lsoria.qrsec.domain.model.User;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+/*
+    Decides which signup becomes the first ADMIN: a singleton marker document in the bootstrap collection,
+    claimed with an upsert. Only the upsert that inserts it wins, so two first signups can't both be admins.
+    Once the marker is known to exist (claimed here, lost to another signup or node, or seeded at startup
+    because there already are users) signups don't touch it again.
+ */
+@Slf4j
+@Component
+public class AdminBootstrap implements SmartInitializingSingleton {
+
+    static final String COLLECTION = "bootstrap";
+    static final String FIRST_ADMIN = "first_admin";
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    // Before the web server starts, so a signup can't claim the marker of a database that already has users
+    @Override
+    public void afterSingletonsInstantiated() {
+
+        if (mongoTemplate.exists(new Query(), User.class)) {
+            mongoTemplate.upsert(marker(), new Update().setOnInsert("claimed_by", null).setOnInsert("claimed_at", LocalDateTime.now()), COLLECTION);
+            this.claimed.set(true);
+        }
+
+    }
+
+    // True only for the one signup that gets to be the first ADMIN
+    public boolean claim(String username) {
+
+        if (this.claimed.get()) {
+            return false;
+        }
+
+        boolean won;
+        try {
+            Update update = new Update().setOnInsert("claimed_by", username).setOnInsert("claimed_at", LocalDateTime.now());
+            won = mongoTemplate.upsert(marker(), update, COLLECTION).getUpsertedId() != null;
+        } catch (DuplicateKeyException exception) {
+            // A concurrent upsert inserted it first
+            won = false;
+        }
+        this.claimed.set(true);
+
+        return won;
+
+    }
+
+    // The claiming signup failed (e.g. its email is taken), the next one can become the first ADMIN
+    public void release(String username) {
+
+        mongoTemplate.remove(new Query(Criteria.where("_id").is(FIRST_ADMIN).and("claimed_by").is(username)), COLLECTION);
+        this.claimed.set(false);
+        log.info("First ADMIN claim of {} released", username);
+
+    }
+
+    private static Query marker() {
+
+        return new Query(Criteria.where("_id").is(FIRST_ADMIN));
+
+    }
+
+}
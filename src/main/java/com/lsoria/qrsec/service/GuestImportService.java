@@ -0,0 +1,291 @@
+package com.lsoria.qrsec.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import com.lsoria.qrsec.domain.dto.GuestDTO;
+import com.lsoria.qrsec.domain.dto.mapper.GuestMapper;
+import com.lsoria.qrsec.domain.http.GuestImportEvent;
+import com.lsoria.qrsec.domain.model.Guest;
+import com.lsoria.qrsec.domain.model.User;
+import com.lsoria.qrsec.repository.BulkUpsertResult;
+import com.lsoria.qrsec.repository.GuestRepository;
+import com.lsoria.qrsec.repository.WriteFailure;
+import com.lsoria.qrsec.service.exception.NotFoundException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/*
+    Imports guests from an upload read line by line: CSV with a header row (dni, first_name, last_name, phone)
+    or NDJSON (one GuestDTO per line). Rows are upserted by dni in unordered bulk writes of batch-size guests,
+    adding the importing owner to each guest, so only one batch is in memory at a time. A guest that already exists
+    keeps its names and phone, the upload only adds the owner to it. The next batch is not read until the previous
+    one is written and its progress reported, a slow database or client slows the upload down.
+ */
+@Slf4j
+@Service
+public class GuestImportService {
+
+    public enum Format { CSV, NDJSON }
+
+    @FunctionalInterface
+    public interface Listener {
+
+        void onEvent(GuestImportEvent event) throws IOException;
+
+    }
+
+    @Autowired
+    GuestRepository guestRepository;
+
+    @Autowired
+    UserService userService;
+
+    @Autowired
+    GuestMapper guestMapper;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Value("${qrsec.guests.import.batch-size:500}")
+    int batchSize;
+
+    // Reports rejected rows and the progress to the listener as it goes, the final totals are reported and returned
+    public GuestImportEvent importGuests(BufferedReader reader, Format format, String username, Listener listener) throws Exception {
+
+        Optional<User> currentUser = userService.findByUsername(username);
+        if (currentUser.isEmpty()) {
+
+            throw new NotFoundException("User " + username + " not found");
+
+        }
+
+        ImportRun run = new ImportRun(currentUser.get(), listener);
+        Map<String, Integer> columns = null;
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            if (format == Format.CSV && columns == null) {
+                columns = header(line);
+                if (!columns.containsKey("dni")) {
+                    run.reject(lineNumber, "The header has no dni column");
+                    break;
+                }
+                continue;
+            }
+
+            run.read++;
+            Guest guest;
+            try {
+                guest = format == Format.CSV ? fromCsv(line, columns) : fromJson(line);
+            } catch (IOException | RuntimeException exception) {
+                run.reject(lineNumber, "Malformed row: " + exception.getMessage());
+                continue;
+            }
+            if (guest.getDni() == null || guest.getDni().isBlank()) {
+                run.reject(lineNumber, "The dni is missing");
+                continue;
+            }
+            guest.setDni(guest.getDni().trim());
+
+            run.add(lineNumber, guest);
+
+        }
+        run.flush();
+
+        GuestImportEvent done = run.totals(GuestImportEvent.DONE);
+        listener.onEvent(done);
+        log.info("Guests imported by {}: {} read, {} inserted, {} updated, {} failed", username, done.getRead(), done.getInserted(), done.getUpdated(), done.getFailed());
+
+        return done;
+
+    }
+
+    private Guest fromJson(String line) throws IOException {
+
+        Guest guest = guestMapper.guestDTOToGuest(objectMapper.readValue(line, GuestDTO.class));
+        guest.setId(null);
+
+        return guest;
+
+    }
+
+    private static Guest fromCsv(String line, Map<String, Integer> columns) {
+
+        List<String> fields = csvFields(line);
+        Guest guest = new Guest();
+        guest.setDni(column(fields, columns, "dni"));
+        guest.setFirstName(column(fields, columns, "firstname"));
+        guest.setLastName(column(fields, columns, "lastname"));
+        guest.setPhone(column(fields, columns, "phone"));
+
+        return guest;
+
+    }
+
+    // Column names are matched ignoring case and underscores, first_name and firstName are the same column
+    private static Map<String, Integer> header(String line) {
+
+        List<String> names = csvFields(line.startsWith("\uFEFF") ? line.substring(1) : line);
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            columns.putIfAbsent(names.get(i).trim().replace("_", "").toLowerCase(Locale.ROOT), i);
+        }
+
+        return columns;
+
+    }
+
+    private static String column(List<String> fields, Map<String, Integer> columns, String name) {
+
+        Integer index = columns.get(name);
+        if (index == null || index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index).trim();
+
+        return value.isEmpty() ? null : value;
+
+    }
+
+    // RFC 4180 fields within one line: quoted fields may hold commas and "" as an escaped quote
+    private static List<String> csvFields(String line) {
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char character = line.charAt(i);
+            if (quoted) {
+                if (character != '"') {
+                    field.append(character);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (character == '"') {
+                quoted = true;
+            } else if (character == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(character);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quoted field");
+        }
+        fields.add(field.toString());
+
+        return fields;
+
+    }
+
+    private final class ImportRun {
+
+        private final User owner;
+        private final Listener listener;
+        private final List<Guest> guests = new ArrayList<>();
+        private final List<Long> lines = new ArrayList<>();
+        private final Set<String> dnis = new HashSet<>();
+        private long read;
+        private long inserted;
+        private long updated;
+        private long failed;
+
+        private ImportRun(User owner, Listener listener) {
+            this.owner = owner;
+            this.listener = listener;
+        }
+
+        private void add(long line, Guest guest) throws IOException {
+
+            // The same dni twice in one unordered bulk write could race into a duplicate key, the batch is written first
+            if (this.dnis.contains(guest.getDni())) {
+                flush();
+            }
+            this.guests.add(guest);
+            this.lines.add(line);
+            this.dnis.add(guest.getDni());
+            if (this.guests.size() >= Math.max(1, batchSize)) {
+                flush();
+            }
+
+        }
+
+        private void reject(long line, String error) throws IOException {
+
+            this.failed++;
+            this.listener.onEvent(GuestImportEvent.error(line, error));
+
+        }
+
+        private void flush() throws IOException {
+
+            if (this.guests.isEmpty()) {
+                return;
+            }
+
+            BulkUpsertResult result = guestRepository.upsertAllByDni(this.guests, this.owner);
+            this.inserted += result.inserted();
+            this.updated += result.matched();
+
+            // Concurrent upserts of a new dni can both try to insert it, the loser finds the stored guest when retried
+            List<Guest> retried = new ArrayList<>();
+            List<Long> retriedLines = new ArrayList<>();
+            for (int i = 0; i < this.guests.size(); i++) {
+                WriteFailure failure = result.failures().get(i);
+                if (failure == null) {
+                    continue;
+                }
+                if (failure.duplicateKey()) {
+                    retried.add(this.guests.get(i));
+                    retriedLines.add(this.lines.get(i));
+                } else {
+                    reject(this.lines.get(i), failure.message());
+                }
+            }
+            if (!retried.isEmpty()) {
+                BulkUpsertResult retry = guestRepository.upsertAllByDni(retried, this.owner);
+                this.inserted += retry.inserted();
+                this.updated += retry.matched();
+                for (Map.Entry<Integer, WriteFailure> failure : retry.failures().entrySet()) {
+                    reject(retriedLines.get(failure.getKey()), failure.getValue().message());
+                }
+            }
+
+            this.guests.clear();
+            this.lines.clear();
+            this.dnis.clear();
+            this.listener.onEvent(totals(GuestImportEvent.PROGRESS));
+
+        }
+
+        private GuestImportEvent totals(String type) {
+
+            return GuestImportEvent.totals(type, this.read, this.inserted, this.updated, this.failed);
+
+        }
+
+    }
+
+}
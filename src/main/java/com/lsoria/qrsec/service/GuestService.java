@@ -1,19 +1,22 @@
 package com.lsoria.qrsec.service;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 
+import com.lsoria.qrsec.domain.http.CursorPage;
 import com.lsoria.qrsec.domain.model.Guest;
 import com.lsoria.qrsec.domain.model.Role;
 import com.lsoria.qrsec.domain.model.User;
+import com.lsoria.qrsec.repository.GuestCriteria;
 import com.lsoria.qrsec.repository.GuestRepository;
+import com.lsoria.qrsec.repository.Queries;
 import com.lsoria.qrsec.service.exception.NotFoundException;
+import com.lsoria.qrsec.service.exception.UnauthorizedException;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -32,7 +35,7 @@ public class GuestService {
     private final Role guardRole = new Role(Role.GUARD);
     private final Role ownerRole = new Role(Role.OWNER);
 
-    public List<Guest> findGuestsByCurrentUser(String username) throws Exception {
+    public CursorPage<Guest> findGuestsByCurrentUser(String username, String cursor, int limit) throws Exception {
 
         // TODO: String currentlyLoggedInUsername = new SecurityContextUserInfo().getUsername();
 
@@ -45,26 +48,26 @@ public class GuestService {
         }
 
         User user = currentUser.get();
-        Set<Guest> guests = new HashSet<>();
+        List<CursorPage<Guest>> guests = new ArrayList<>();
 
         if (user.getAuthorities().contains(adminRole)) {
-            guests.addAll(findAll());
+            guests.add(findAll(cursor, limit));
         }
         if (user.getAuthorities().contains(ownerRole)) {
-            guests.addAll(findAllMyGuests(username));
+            guests.add(findAllMyGuests(username, cursor, limit));
         }
 
-        return new ArrayList<>(guests);
+        return CursorPage.union(guests, limit, Guest::getId);
 
     }
 
-    public List<Guest> findAll() {
+    public CursorPage<Guest> findAll(String cursor, int limit) {
 
-        return guestRepository.findAll();
+        return findPage(null, cursor, limit);
 
     }
 
-    public List<Guest> findAllMyGuests(String username) throws Exception {
+    public CursorPage<Guest> findAllMyGuests(String username, String cursor, int limit) throws Exception {
 
         // String currentlyLoggedInUsername = new SecurityContextUserInfo().getUsername();
 
@@ -75,7 +78,13 @@ public class GuestService {
 
         }
 
-        return guestRepository.findByOwnersContaining(currentUser.get());
+        return findPage(GuestCriteria.ownedBy(currentUser.get()), cursor, limit);
+
+    }
+
+    private CursorPage<Guest> findPage(Criteria criteria, String cursor, int limit) {
+
+        return CursorPage.of(guestRepository.findAllResolved(Queries.page(criteria, cursor, limit)), limit, Guest::getId);
 
     }
 
@@ -85,13 +94,9 @@ public class GuestService {
 
     }
 
+    // One findAndModify upsert keyed by dni: concurrent owners storing the same guest each add themselves to its owners
     public Guest save(Guest guest, String username) throws Exception {
 
-        Optional<Guest> existentGuest = guestRepository.findByDni(guest.getDni());
-        if (existentGuest.isPresent()) {
-            guest = existentGuest.get();
-        }
-
         // String currentlyLoggedInUsername = new SecurityContextUserInfo().getUsername();
 
         Optional<User> currentUser = userService.findByUsername(username);
@@ -100,9 +105,17 @@ public class GuestService {
             throw new NotFoundException("User " + username + " not found");
 
         }
-        guest.getOwners().add(currentUser.get());
 
-        return guestRepository.insert(guest);
+        // Without dni there is nothing to upsert on (a null dni would match every guest without one)
+        if (guest.getDni() == null || guest.getDni().isBlank()) {
+
+            guest.getOwners().add(currentUser.get());
+
+            return guestRepository.insert(guest);
+
+        }
+
+        return guestRepository.upsertByDni(guest, currentUser.get());
 
     }
 
@@ -117,14 +130,11 @@ public class GuestService {
 
     }
 
-    public void delete(String id, String username) throws Exception {
-
-        Optional<Guest> foundGuest = this.findOne(id);
-        if (foundGuest.isEmpty()) {
-
-            throw new NotFoundException("Guest " + id + " not found");
-
-        }
+    /*
+    One $pull of the owner conditioned on ownership, the guest is deleted when its last owner leaves.
+    Returns false when the guest doesn't exist, UnauthorizedException when the user isn't one of its owners.
+    */
+    public boolean delete(String id, String username) throws Exception {
 
         Optional<User> foundUser = userService.findByUsername(username);
         if (foundUser.isEmpty()) {
@@ -133,24 +143,24 @@ public class GuestService {
 
         }
 
-        Guest guestToDelete = foundGuest.get();
-        User user = foundUser.get();
-        Set<User> owners = guestToDelete.getOwners();
-        if (owners.size() == 1) {
+        Optional<Integer> remainingOwners = guestRepository.pullOwner(id, foundUser.get());
+        if (remainingOwners.isEmpty()) {
 
-            guestRepository.deleteById(id);
+            // Only a failed delete pays for telling both cases apart
+            if (!guestRepository.existsById(id)) {
+                return false;
+            }
 
-            return;
+            throw new UnauthorizedException("User " + username + " doesn't own the Guest " + id);
 
         }
-        if (!owners.remove(user)) {
+        if (remainingOwners.get() == 0) {
 
-            throw new NotFoundException("Guest " + id + " not found");
+            guestRepository.deleteIfOwnerless(id);
 
         }
 
-        guestToDelete.setOwners(owners);
-        guestRepository.save(guestToDelete);
+        return true;
 
     }
 
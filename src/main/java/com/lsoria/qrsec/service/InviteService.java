@@ -1,26 +1,41 @@
 package com.lsoria.qrsec.service;
 
-import java.time.DayOfWeek;
 import java.time.Instant;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.time.OffsetDateTime;
-import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
 
+import com.lsoria.qrsec.domain.http.BulkItemResult;
+import com.lsoria.qrsec.domain.http.CursorPage;
+import com.lsoria.qrsec.domain.model.AccessEvent;
+import com.lsoria.qrsec.domain.model.Guest;
 import com.lsoria.qrsec.domain.model.Invite;
+import com.lsoria.qrsec.domain.model.InviteSchedule;
 import com.lsoria.qrsec.domain.model.Role;
 import com.lsoria.qrsec.domain.model.User;
+import com.lsoria.qrsec.repository.InviteCriteria;
 import com.lsoria.qrsec.repository.InviteRepository;
+import com.lsoria.qrsec.repository.Queries;
+import com.lsoria.qrsec.repository.WriteFailure;
+import com.lsoria.qrsec.service.analytics.OccupancyService;
+import com.lsoria.qrsec.service.cache.TodayInviteIndex;
+import com.lsoria.qrsec.service.exception.ConflictException;
 import com.lsoria.qrsec.service.exception.NotFoundException;
+import com.lsoria.qrsec.service.gate.GateEventWriteBehind;
+import com.lsoria.qrsec.service.token.InviteRevocationList;
+import com.lsoria.qrsec.service.token.InviteToken;
+import com.lsoria.qrsec.service.token.InviteTokenService;
 
 import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -35,13 +50,30 @@ public class InviteService {
     @Autowired
     UserService userService;
 
-    private final DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm");
+    @Autowired
+    InviteTokenService inviteTokenService;
+
+    @Autowired
+    InviteRevocationList inviteRevocationList;
+
+    @Autowired
+    TodayInviteIndex todayInviteIndex;
+
+    @Autowired
+    AccessEventService accessEventService;
+
+    @Autowired
+    OccupancyService occupancyService;
+
+    // Only when qrsec.gate.write-behind.enabled
+    @Autowired(required = false)
+    GateEventWriteBehind gateEventWriteBehind;
 
     private final Role adminRole = new Role(Role.ADMIN);
     private final Role guardRole = new Role(Role.GUARD);
     private final Role ownerRole = new Role(Role.OWNER);
 
-    public List<Invite> findInvitesByCurrentUser(String username) throws Exception {
+    public CursorPage<Invite> findInvitesByCurrentUser(String username, String cursor, int limit) throws Exception {
 
         // TODO: String currentlyLoggedInUsername = new SecurityContextUserInfo().getUsername();
 
@@ -54,47 +86,54 @@ public class InviteService {
         }
 
         User user = currentUser.get();
-        Set<Invite> invites = new HashSet<>();
 
+        // Admins see every invite, the other roles' predicates would only narrow it down
         if (user.getAuthorities().contains(adminRole)) {
-            invites.addAll(findAll());
+            return findAll(cursor, limit);
+        }
+
+        boolean guard = user.getAuthorities().contains(guardRole);
+        boolean owner = user.getAuthorities().contains(ownerRole);
+        if (!guard && !owner) {
+            return CursorPage.of(List.of(), limit, Invite::getId);
         }
-        if (user.getAuthorities().contains(guardRole)) {
-            invites.addAll(findAllValidForToday());
+        // Only a guard, today's invites are in memory
+        if (!owner) {
+            return findAllValidForToday(cursor, limit);
         }
-        if (user.getAuthorities().contains(ownerRole)) {
-            invites.addAll(findAllMyInvites(username));
+
+        // One query with an $or of the predicates of each role, so an invite matching several roles is read once
+        List<Criteria> visible = new ArrayList<>();
+        if (guard) {
+            visible.add(InviteCriteria.enabledForDay(InviteSchedule.dayOfWeek(LocalDateTime.now())));
         }
+        visible.add(InviteCriteria.ownedBy(user));
 
-        return new ArrayList<>(invites);
+        return findPage(visible.size() == 1 ? visible.get(0) : new Criteria().orOperator(visible), cursor, limit);
 
     }
 
-    public List<Invite> findAll() {
+    public CursorPage<Invite> findAll(String cursor, int limit) {
 
-        return inviteRepository.findAll();
+        return findPage(null, cursor, limit);
 
     }
 
-    public List<Invite> findAllValidForToday() {
+    public CursorPage<Invite> findAllValidForToday(String cursor, int limit) {
 
         // TODO: String currentlyLoggedInUsername = new SecurityContextUserInfo().getUsername();
 
-        List<Invite> allInvites = findAll();
-        LocalDateTime today = LocalDateTime.now();
-
-        List<Invite> invites = new ArrayList<>();
-        for (Invite invite : allInvites) {
-            if (validToday(today, invite)) {
-                invites.add(invite);
-            }
+        if (todayInviteIndex.isReady()) {
+            return CursorPage.of(todayInviteIndex.page(cursor, limit), limit, Invite::getId);
         }
 
-        return invites;
+        LocalDateTime today = LocalDateTime.now();
+
+        return findPage(InviteCriteria.enabledForDay(InviteSchedule.dayOfWeek(today)), cursor, limit);
 
     }
 
-    public List<Invite> findAllMyInvites(String username) throws Exception {
+    public CursorPage<Invite> findAllMyInvites(String username, String cursor, int limit) throws Exception {
 
         // TODO: String currentlyLoggedInUsername = new SecurityContextUserInfo().getUsername();
 
@@ -105,7 +144,13 @@ public class InviteService {
 
         }
 
-        return inviteRepository.findByOwner(currentUser.get());
+        return findPage(InviteCriteria.ownedBy(currentUser.get()), cursor, limit);
+
+    }
+
+    private CursorPage<Invite> findPage(Criteria criteria, String cursor, int limit) {
+
+        return CursorPage.of(inviteRepository.findAllResolved(Queries.page(criteria, cursor, limit)), limit, Invite::getId);
 
     }
 
@@ -115,6 +160,20 @@ public class InviteService {
 
     }
 
+    // For the gate: invites valid today are served from memory, any other one is read (it may still be valid, e.g. another day)
+    public Optional<Invite> findOneForGate(String id) {
+
+        if (todayInviteIndex.isReady()) {
+            Optional<Invite> invite = todayInviteIndex.get(id);
+            if (invite.isPresent()) {
+                return invite;
+            }
+        }
+
+        return findOne(id);
+
+    }
+
     public Invite save(Invite invite, String username) throws Exception {
 
         // TODO: String currentlyLoggedInUsername = new SecurityContextUserInfo().getUsername();
@@ -141,26 +200,155 @@ public class InviteService {
         invite.setCreatedAt(time);
         invite.setLastModifiedAt(time);
 
-        return inviteRepository.insert(invite);
+        Invite savedInvite = inviteRepository.insert(invite);
+        syncRevocation(savedInvite);
+        todayInviteIndex.refresh(savedInvite.getId());
+
+        return withToken(savedInvite);
 
     }
 
-    public Invite update(Invite oldInvite, Invite updatedInvite) {
+    /*
+    Creates many Invites for the same owner: the owner is looked up once, every Invite is validated and the valid ones are
+    written with one unordered bulk insert. Ids are assigned beforehand so every result can tell which Invite it is.
+    */
+    public List<BulkItemResult<Invite>> saveAll(List<Invite> invites, String username) throws Exception {
+
+        Optional<User> currentUser = userService.findByUsername(username);
+        if (currentUser.isEmpty()) {
+
+            throw new NotFoundException("User " + username + " not found");
+
+        }
+
+        User user = currentUser.get();
+        LocalDateTime time = LocalDateTime.now();
+
+        List<BulkItemResult<Invite>> results = new ArrayList<>(invites.size());
+        List<Invite> validInvites = new ArrayList<>(invites.size());
+        List<Integer> validIndexes = new ArrayList<>(invites.size());
+        for (int index = 0; index < invites.size(); index++) {
+            Invite invite = invites.get(index);
+            Optional<String> error = invalidReason(invite);
+            if (error.isPresent()) {
+                results.add(BulkItemResult.failed(index, 400, error.get()));
+                continue;
+            }
+
+            invite.setId(new ObjectId().toHexString());
+            invite.setOwner(user);
+            invite.setCreatedAt(time);
+            invite.setLastModifiedAt(time);
+
+            results.add(null);
+            validInvites.add(invite);
+            validIndexes.add(index);
+        }
+
+        Map<Integer, WriteFailure> failures = inviteRepository.insertAllUnordered(validInvites);
+
+        List<String> createdIds = new ArrayList<>(validInvites.size());
+        for (int position = 0; position < validInvites.size(); position++) {
+            int index = validIndexes.get(position);
+            Invite invite = validInvites.get(position);
+            WriteFailure failure = failures.get(position);
+            if (failure != null) {
+                results.set(index, BulkItemResult.failed(index, failure.duplicateKey() ? 409 : 500, failure.message()));
+                continue;
+            }
+
+            syncRevocation(invite);
+            createdIds.add(invite.getId());
+            results.set(index, BulkItemResult.created(index, withToken(invite)));
+        }
+
+        todayInviteIndex.refreshAll(createdIds);
+
+        return results;
+
+    }
+
+    // Empty if the Invite can be stored, otherwise what is wrong with it
+    public Optional<String> invalidReason(Invite invite) {
+
+        if (invite == null) {
+            return Optional.of("Invite is missing");
+        }
+        if (invite.getDays() != null) {
+            for (String day : invite.getDays()) {
+                if (day == null || !day.matches("[0-6]")) {
+                    return Optional.of("Invalid day " + day + ", days go from 0 (Sunday) to 6 (Saturday)");
+                }
+            }
+        }
+        if (invite.getHours() != null) {
+            if (invite.getHours().size() > InviteTokenService.MAX_RANGES) {
+                return Optional.of("Too many hours, an invite can have up to " + InviteTokenService.MAX_RANGES + " ranges");
+            }
+            for (List<String> range : invite.getHours()) {
+                if (range == null || range.size() != 2 || !isTime(range.get(0)) || !isTime(range.get(1))) {
+                    return Optional.of("Invalid hours " + range + ", expected [\"HH:mm\", \"HH:mm\"]");
+                }
+                if (range.get(0).compareTo(range.get(1)) >= 0) {
+                    return Optional.of("Invalid hours " + range + ", the start must be before the end");
+                }
+            }
+        }
+        if (invite.getMaxTimeAllowed() != null && invite.getMaxTimeAllowed() < 0) {
+            return Optional.of("maxTimeAllowed can't be negative");
+        }
+        if (invite.getNumberOfPassengers() != null && invite.getNumberOfPassengers() < 0) {
+            return Optional.of("numberOfPassengers can't be negative");
+        }
+        if (invite.getGuests() != null) {
+            for (Guest guest : invite.getGuests()) {
+                if (guest == null || guest.getId() == null) {
+                    return Optional.of("Guests must be referenced by id");
+                }
+            }
+        }
+
+        return Optional.empty();
+
+    }
 
-        oldInvite.setDescription(updatedInvite.getDescription());
+    private static boolean isTime(String time) {
 
-        oldInvite.setGuests(updatedInvite.getGuests());
+        return time != null && time.matches("([01][0-9]|2[0-3]):[0-5][0-9]");
 
-        oldInvite.setDays(updatedInvite.getDays());
-        oldInvite.setHours(updatedInvite.getHours());
-        oldInvite.setMaxTimeAllowed(updatedInvite.getMaxTimeAllowed());
+    }
 
-        oldInvite.setDropsTrueGuest(updatedInvite.getDropsTrueGuest());
-        oldInvite.setNumberOfPassengers(updatedInvite.getNumberOfPassengers());
+    /*
+    $set of the fields the owner edits (enabled and the arrival and departure times are left to the actions), applied
+    only if the invite still has the version it was read with: the edit was made on what the owner saw, if a guard
+    or another edit changed the invite since then it is rejected with ConflictException instead of undoing them.
+    */
+    public Invite update(Invite oldInvite, Invite updatedInvite) throws Exception {
+
+        LocalDateTime now = LocalDateTime.now();
+        Update update = new Update()
+                .set("description", updatedInvite.getDescription())
+                .set("guests", updatedInvite.getGuests())
+                .set("days", updatedInvite.getDays())
+                .set("hours", updatedInvite.getHours())
+                .set("maxTimeAllowed", updatedInvite.getMaxTimeAllowed())
+                .set("dropsTrueGuest", updatedInvite.getDropsTrueGuest())
+                .set("numberOfPassengers", updatedInvite.getNumberOfPassengers())
+                .set("lastModifiedAt", now)
+                .set("tokensValidFrom", now);
+
+        Optional<Invite> savedInvite = inviteRepository.compareAndSet(oldInvite.getId(), oldInvite.getVersion(), update);
+        if (savedInvite.isEmpty()) {
+            if (!inviteRepository.existsById(oldInvite.getId())) {
+                throw new NotFoundException("Invite " + oldInvite.getId() + " not found");
+            }
+            throw new ConflictException("Invite " + oldInvite.getId() + " changed since it was read");
+        }
 
-        oldInvite.setLastModifiedAt(LocalDateTime.now());
+        syncRevocation(savedInvite.get());
+        todayInviteIndex.refresh(savedInvite.get().getId());
 
-        return inviteRepository.save(oldInvite);
+        return withToken(savedInvite.get());
 
     }
 
@@ -177,104 +365,172 @@ public class InviteService {
         if (!inviteToDelete.getEnabled()) {
 
             inviteRepository.deleteById(id);
+            inviteRevocationList.revokeDeleted(id);
+            todayInviteIndex.remove(id);
 
             return true;
 
         }
 
-        inviteToDelete.setEnabled(false);
-        inviteToDelete.setLastModifiedAt(LocalDateTime.now());
-        inviteRepository.save(inviteToDelete);
+        LocalDateTime now = LocalDateTime.now();
+        apply(inviteToDelete, new Update().set("enabled", false).set("lastModifiedAt", now).set("tokensValidFrom", now));
 
         return false;
 
     }
 
+    // Signs the invite's current state, the token must be issued again after every change
+    public Invite withToken(Invite invite) {
+
+        invite.setToken(inviteTokenService.issue(invite));
+
+        return invite;
+
+    }
+
+    public boolean isRevoked(String id) {
+
+        return inviteRevocationList.isRevoked(id);
+
+    }
+
     public Boolean inviteIsValid(Invite invite, String timestamp) throws Exception {
 
         if (!invite.getEnabled()) {
             return false;
         }
 
+        return isWithinSchedule(invite.getCreatedAt(), invite.getDepartureTime(), invite.getSchedule(), timestamp);
+
+    }
+
+    /*
+    Same checks as inviteIsValid over what the token carries, enabled is replaced by the revocation list. A token
+    issued before the invite's last edit, departure, enable or disable carries an outdated schedule or departure and
+    is rejected, the owner gets a new one with the invite.
+    */
+    public Boolean tokenIsValid(InviteToken token, String timestamp) throws Exception {
+
+        if (inviteRevocationList.isRevoked(token.id()) || inviteRevocationList.isSuperseded(token.id(), token.version())) {
+            return false;
+        }
+
+        return isWithinSchedule(token.createdAt(), token.departureTime(), token.schedule(), timestamp);
+
+    }
+
+    private Boolean isWithinSchedule(LocalDateTime createdAt, LocalDateTime departureTime, InviteSchedule schedule, String timestamp) throws Exception {
+
         // Convert to Instant (UTC)
         Instant utcInstant = OffsetDateTime.parse(timestamp).toInstant();
         // Convert to LocalDateTime in UTC, needed to compare timestamp with timestamps generated by the server
-        LocalDateTime utcLocalTimestamp = LocalDateTime.ofInstant(utcInstant, ZoneId.of("UTC"));
+        LocalDateTime utcLocalTimestamp = LocalDateTime.ofInstant(utcInstant, ZoneOffset.UTC);
 
         // If the person wants to get in before the invite was created -> invalid request
-        if (utcLocalTimestamp.isBefore(invite.getCreatedAt())) {
+        if (utcLocalTimestamp.isBefore(createdAt)) {
             return false;
         }
 
         // If the person has left and the time they want to get in is before the time they left  -> invalid invite
-        if (invite.getDepartureTime() != null && utcLocalTimestamp.isBefore(invite.getDepartureTime())) {
+        if (departureTime != null && utcLocalTimestamp.isBefore(departureTime)) {
             return false;
         }
 
         // Parse timestamp as LocalDateTime needed to compare user time with invite's config
         LocalDateTime timestampLocal = LocalDateTime.parse(timestamp, DateTimeFormatter.ISO_DATE_TIME);
-        if (!validToday(timestampLocal, invite)) {
+        if (!validToday(timestampLocal, schedule)) {
             return false;
         }
 
-        LocalTime timeFromTimestamp = timestampLocal.toLocalTime();
-
-        List<List<String>> inviteHours = invite.getHours();
-        boolean isInBetween = inviteHours.isEmpty(); // If the list is empty it is a valid invite, no need to check
-        for (int i = 0; i < inviteHours.size(); i++) {
-            String startTime = invite.getHours().get(i).get(0);
-            String endTime = invite.getHours().get(i).get(1);
-
-            LocalTime parsedStartTime = LocalTime.parse(startTime, timeFormatter);
-            LocalTime parsedEndTime = LocalTime.parse(endTime, timeFormatter);
-
-            if (timeFromTimestamp.isAfter(parsedStartTime) && timeFromTimestamp.isBefore(parsedEndTime)) {
-                isInBetween = true;
-                break;
-            }
-        }
-
-        return isInBetween;
+        return schedule.allowsTime(timestampLocal);
 
     }
 
-    private Boolean validToday(LocalDateTime timestamp, Invite invite) {
+    Boolean validToday(LocalDateTime timestamp, InviteSchedule schedule) {
 
-        DayOfWeek day = timestamp.getDayOfWeek();
-        int dayAsInt = day.getValue();
-        if (dayAsInt == 7) {
-            dayAsInt = 0;
-        }
+        return schedule.allowsDay(timestamp);
 
-        Set<String> inviteDays = invite.getDays();
+    }
 
-        return inviteDays.isEmpty() || inviteDays.contains(Integer.toString(dayAsInt));
+    // guard is who recorded the action and guestId the guest that went through the gate, if the guard picked one
+    public Invite doAction(Invite invite, String action, LocalDateTime timestamp, String guard, String guestId) throws Exception {
 
-    }
+        LocalDateTime now = LocalDateTime.now();
 
-    public Invite doAction(Invite invite, String action, LocalDateTime timestamp) throws Exception {
+        // Acknowledged once journaled, the invite is returned as it will be stored by the next flush
+        if (gateEventWriteBehind != null && GateEventWriteBehind.handles(action)) {
+            gateEventWriteBehind.enqueue(invite.getId(), action, timestamp, guard, guestId);
+            if ("arrival".equals(action)) {
+                invite.setArrivalTime(timestamp);
+            } else {
+                invite.setDepartureTime(timestamp);
+                invite.setTokensValidFrom(now);
+                // Until the flush MongoDB still has no departure, tokens issued from it must not be accepted either
+                inviteRevocationList.supersede(invite.getId(), now);
+            }
+            invite.setLastModifiedAt(now);
+            return invite;
+        }
 
+        Update update = new Update();
         switch (action) {
             case "arrival":
-                invite.setArrivalTime(timestamp);
+                update.set("arrivalTime", timestamp);
                 break;
             case "departure":
-                invite.setDepartureTime(timestamp);
+                update.set("departureTime", timestamp).set("tokensValidFrom", now);
                 break;
             case "enable":
-                invite.setEnabled(true);
+                update.set("enabled", true).set("tokensValidFrom", now);
                 break;
             case "disable":
-                invite.setEnabled(false);
+                update.set("enabled", false).set("tokensValidFrom", now);
                 break;
             default:
                 throw new NotFoundException("Action " + action + " invalid");
         }
+        update.set("lastModifiedAt", now);
 
-        invite.setLastModifiedAt(LocalDateTime.now());
-        this.inviteRepository.save(invite);
+        // The invite keeps the latest state for validations, every action is also appended to its history
+        Invite updatedInvite = apply(invite, update);
+        AccessEvent accessEvent = accessEventService.record(updatedInvite.getId(), action, timestamp, guard, guestId);
+        occupancyService.record(List.of(accessEvent));
 
-        return invite;
+        return updatedInvite;
+
+    }
+
+    /*
+    $set of only the fields the action changes (the guests and hours are not rewritten) in one atomic update.
+    An action doesn't depend on the rest of the invite, so there is nothing to compare: two guards recording an
+    arrival and a departure at once both get their field written. Actions are last-writer-wins per field: two
+    arrivals (or an enable and a disable) at once leave whichever was applied last, neither is rejected. The version
+    still moves, an owner edit read before it is rejected.
+    */
+    private Invite apply(Invite invite, Update update) throws Exception {
+
+        Optional<Invite> updatedInvite = inviteRepository.apply(invite.getId(), update);
+        if (updatedInvite.isEmpty()) {
+            throw new NotFoundException("Invite " + invite.getId() + " not found");
+        }
+
+        syncRevocation(updatedInvite.get());
+        todayInviteIndex.apply(updatedInvite.get());
+
+        return updatedInvite.get();
+
+    }
+
+    private void syncRevocation(Invite invite) {
+
+        if (Boolean.TRUE.equals(invite.getEnabled())) {
+            inviteRevocationList.restore(invite.getId());
+        } else {
+            inviteRevocationList.revoke(invite.getId());
+        }
+        if (invite.getTokensValidFrom() != null) {
+            inviteRevocationList.supersede(invite.getId(), invite.getTokensValidFrom());
+        }
 
     }
 
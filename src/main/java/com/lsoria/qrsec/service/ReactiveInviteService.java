@@ -0,0 +1,168 @@
+package com.lsoria.qrsec.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.lsoria.qrsec.domain.model.Invite;
+import com.lsoria.qrsec.domain.model.OccupancyRollup;
+import com.lsoria.qrsec.domain.model.User;
+import com.lsoria.qrsec.repository.ReactiveInviteRepository;
+import com.lsoria.qrsec.repository.ReactiveUserRepository;
+import com.lsoria.qrsec.service.analytics.OccupancyService;
+import com.lsoria.qrsec.service.cache.TodayInviteIndex;
+import com.lsoria.qrsec.service.cache.UserCache;
+import com.lsoria.qrsec.service.exception.NotFoundException;
+import com.lsoria.qrsec.service.gate.GateEventWriteBehind;
+import com.lsoria.qrsec.service.token.InviteRevocationList;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/*
+    Non blocking version of the gate operations (validate and action).
+    Invites and users are read without their references, so they must not be saved back with the blocking repositories.
+ */
+@Service
+public class ReactiveInviteService {
+
+    @Autowired
+    ReactiveInviteRepository reactiveInviteRepository;
+
+    @Autowired
+    ReactiveUserRepository reactiveUserRepository;
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    UserCache userCache;
+
+    @Autowired
+    InviteService inviteService;
+
+    @Autowired
+    InviteRevocationList inviteRevocationList;
+
+    @Autowired
+    TodayInviteIndex todayInviteIndex;
+
+    // Only when qrsec.gate.write-behind.enabled
+    @Autowired(required = false)
+    GateEventWriteBehind gateEventWriteBehind;
+
+    // A cached User is served right away, otherwise it is read without filling the cache (the address is missing)
+    public Mono<User> findByUsername(String username) {
+
+        User cachedUser = userCache.getNativeCache().getIfPresent(username);
+        if (cachedUser != null) {
+            return Mono.just(cachedUser);
+        }
+
+        return reactiveUserRepository.findForGateByUsername(username);
+
+    }
+
+    public Mono<Invite> findOne(String id) {
+
+        if (todayInviteIndex.isReady()) {
+            Invite invite = todayInviteIndex.get(id).orElse(null);
+            if (invite != null) {
+                return Mono.just(invite);
+            }
+        }
+
+        return reactiveInviteRepository.findForGateById(id);
+
+    }
+
+    public boolean isRevoked(String id) {
+
+        return inviteRevocationList.isRevoked(id);
+
+    }
+
+    public Mono<Boolean> inviteIsValid(Invite invite, String timestamp) {
+
+        return Mono.fromCallable(() -> inviteService.inviteIsValid(invite, timestamp));
+
+    }
+
+    // Sets only the fields the action changes and appends it to the access events, empty if the invite does not exist
+    public Mono<Invite> doAction(String id, String action, LocalDateTime timestamp, String guard, String guestId) {
+
+        LocalDateTime now = LocalDateTime.now();
+
+        // Same path as the blocking action: acknowledged once journaled (a blocking fsync), the invite is returned as
+        // it will be stored by the next flush. Read from MongoDB, the index's invites are shared and must not change
+        if (gateEventWriteBehind != null && GateEventWriteBehind.handles(action)) {
+            return reactiveInviteRepository.findForGateById(id)
+                    .flatMap(invite -> Mono.fromCallable(() -> {
+                        gateEventWriteBehind.enqueue(id, action, timestamp, guard, guestId);
+                        if ("arrival".equals(action)) {
+                            invite.setArrivalTime(timestamp);
+                        } else {
+                            invite.setDepartureTime(timestamp);
+                            invite.setTokensValidFrom(now);
+                            // Until the flush MongoDB still has no departure, tokens issued from it must not be accepted either
+                            inviteRevocationList.supersede(id, now);
+                        }
+                        invite.setLastModifiedAt(now);
+                        return invite;
+                    }).subscribeOn(Schedulers.boundedElastic()));
+        }
+
+        Update update = new Update();
+        switch (action) {
+            case "arrival":
+                update.set("arrivalTime", timestamp);
+                break;
+            case "departure":
+                update.set("departureTime", timestamp).set("tokensValidFrom", now);
+                break;
+            case "enable":
+                update.set("enabled", true).set("tokensValidFrom", now);
+                break;
+            case "disable":
+                update.set("enabled", false).set("tokensValidFrom", now);
+                break;
+            default:
+                return Mono.error(new NotFoundException("Action " + action + " invalid"));
+        }
+        update.set("lastModifiedAt", now);
+        // The version moves so an owner edit of the invite read before it is rejected
+        update.inc("version", 1);
+
+        Query query = new Query(Criteria.where("id").is(id));
+        query.fields().exclude("owner", "guests");
+
+        return reactiveMongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), Invite.class)
+                .doOnNext(invite -> {
+                    if (Boolean.TRUE.equals(invite.getEnabled())) {
+                        inviteRevocationList.restore(invite.getId());
+                    } else {
+                        inviteRevocationList.revoke(invite.getId());
+                    }
+                    if (invite.getTokensValidFrom() != null) {
+                        inviteRevocationList.supersede(invite.getId(), invite.getTokensValidFrom());
+                    }
+                })
+                .flatMap(invite -> reactiveMongoTemplate.insert(AccessEventService.event(invite.getId(), action, timestamp, guard, guestId))
+                        .flatMapMany(event -> Flux.fromIterable(OccupancyService.increments(List.of(event))))
+                        .concatMap(increment -> reactiveMongoTemplate.upsert(increment.query(), increment.update(), OccupancyRollup.class))
+                        .then(Mono.just(invite)))
+                // The index keeps invites with their references, reading them again is a blocking call
+                .flatMap(invite -> Mono.fromRunnable(() -> todayInviteIndex.refresh(invite.getId()))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .thenReturn(invite));
+
+    }
+
+}
@@ -5,15 +5,19 @@ import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
+import com.lsoria.qrsec.domain.http.CursorPage;
 import com.lsoria.qrsec.domain.model.Role;
 import com.lsoria.qrsec.domain.model.User;
 import com.lsoria.qrsec.repository.UserRepository;
+import com.lsoria.qrsec.service.cache.RequestUserCache;
+import com.lsoria.qrsec.service.cache.UserCache;
 import com.lsoria.qrsec.service.exception.ConflictException;
 import com.lsoria.qrsec.service.exception.NotFoundException;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -25,9 +29,22 @@ public class UserService {
     @Autowired
     UserRepository userRepository;
 
-    public List<User> findAll() {
+    @Autowired
+    RequestUserCache requestUserCache;
+
+    @Autowired
+    UserCache userCache;
+
+    @Autowired
+    AdminBootstrap adminBootstrap;
 
-        return userRepository.findAll();
+    public CursorPage<User> findAll(String cursor, int limit) {
+
+        List<User> users = cursor == null || cursor.isBlank()
+                ? userRepository.findAllByOrderByIdAsc(Limit.of(limit + 1))
+                : userRepository.findByIdGreaterThanOrderByIdAsc(cursor, Limit.of(limit + 1));
+
+        return CursorPage.of(users, limit, User::getId);
 
     }
 
@@ -39,13 +56,15 @@ public class UserService {
 
     public Optional<User> findByUsername(String username) {
 
-        return userRepository.findByUsername(username);
+        return requestUserCache.get(username, key -> userCache.get(key, userRepository::findByUsername));
 
     }
 
     public User save(User user) throws Exception {
 
-        if (userRepository.count() == 0) {
+        // Only the first signup ever claims the bootstrap marker, the others don't read the users collection
+        boolean firstAdmin = adminBootstrap.claim(user.getUsername());
+        if (firstAdmin) {
             user.setEnabled(true);
             Set<Role> roles = new HashSet<>();
             roles.add(new Role(Role.ADMIN));
@@ -58,18 +77,35 @@ public class UserService {
 
         try {
 
-            return userRepository.insert(user);
+            User createdUser = userRepository.insert(user);
+            evict(createdUser.getUsername());
+
+            return createdUser;
 
         } catch (DuplicateKeyException duplicateKeyException) {
 
+            if (firstAdmin) {
+                adminBootstrap.release(user.getUsername());
+            }
+
             throw new ConflictException(duplicateKeyException.getMessage());
 
+        } catch (RuntimeException exception) {
+
+            if (firstAdmin) {
+                adminBootstrap.release(user.getUsername());
+            }
+
+            throw exception;
+
         }
 
     }
 
     public User update(User oldUser, User updatedUser) {
 
+        String oldUsername = oldUser.getUsername();
+
         oldUser.setAddress(updatedUser.getAddress());
         oldUser.setAuthorities(updatedUser.getAuthorities());
         oldUser.setEnabled(updatedUser.getEnabled());
@@ -78,7 +114,11 @@ public class UserService {
         oldUser.setPhone(updatedUser.getPhone());
         oldUser.setUsername(updatedUser.getUsername());
 
-        return userRepository.save(oldUser);
+        User savedUser = userRepository.save(oldUser);
+        evict(oldUsername);
+        evict(savedUser.getUsername());
+
+        return savedUser;
 
     }
 
@@ -95,6 +135,7 @@ public class UserService {
         user.setEnabled(false);
 
         userRepository.save(user);
+        evict(user.getUsername());
 
     }
 
@@ -113,4 +154,12 @@ public class UserService {
 
     }
 
+    // Must run after the change is persisted, otherwise a concurrent lookup could cache the old User again
+    private void evict(String username) {
+
+        requestUserCache.evict(username);
+        userCache.invalidate(username);
+
+    }
+
 }
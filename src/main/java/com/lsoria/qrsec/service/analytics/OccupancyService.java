@@ -0,0 +1,364 @@
+package com.lsoria.qrsec.service.analytics;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.lsoria.qrsec.domain.http.Occupancy;
+import com.lsoria.qrsec.domain.model.AccessEvent;
+import com.lsoria.qrsec.domain.model.Invite;
+import com.lsoria.qrsec.domain.model.OccupancyRollup;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+/*
+    Hourly and daily counters of arrivals and departures, incremented as the actions are recorded, so the occupancy
+    of a range is read from the rollups instead of the invites. How many visitors were inside at the end of a period
+    is every arrival minus every departure until then: the days before the range and the hours of its first day
+    before it give the starting point, then the periods of the range are walked.
+    Periods are in the guards' local time (the client timestamps), as the rest of the invite times.
+    The write-behind records its flushes as batches: each period keeps the ids of the last batches counted in it
+    and only takes an increment whose batch isn't among them, in the same update, so a flush retried after a partial
+    failure only counts the periods it missed. The skipped ones are counted in qrsec.occupancy.duplicate-increments.
+    A batch split after failing, or replayed after a crash, gets new ids and can still be counted twice.
+ */
+@Slf4j
+@Service
+public class OccupancyService {
+
+    public record Increment(Query query, Update update) {
+    }
+
+    private static final String ARRIVAL = "arrival";
+    private static final String DEPARTURE = "departure";
+    private static final int BACKFILL_CHUNK = 1000;
+    // A retried batch is the last one of its periods, a few more cover the periods shared with the next flushes
+    private static final int BATCHES_KEPT = 16;
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${qrsec.analytics.occupancy.max-periods:2208}")
+    int maxPeriods;
+
+    @Value("${qrsec.analytics.occupancy.backfill-lag:2d}")
+    Duration backfillLag;
+
+    public static boolean counts(String action) {
+
+        return ARRIVAL.equals(action) || DEPARTURE.equals(action);
+
+    }
+
+    public static Collection<Increment> increments(Collection<AccessEvent> events) {
+
+        return increments(null, events);
+
+    }
+
+    // One upsert per period the events fall in, events of the same period are added up first. A batch counts once per period
+    public static List<Increment> increments(String batch, Collection<AccessEvent> events) {
+
+        Map<String, long[]> counters = new LinkedHashMap<>();
+        Map<String, LocalDateTime> starts = new HashMap<>();
+        for (AccessEvent event : events) {
+            if (!counts(event.getAction())) {
+                continue;
+            }
+            int counter = ARRIVAL.equals(event.getAction()) ? 0 : 1;
+            for (String granularity : List.of(OccupancyRollup.HOUR, OccupancyRollup.DAY)) {
+                LocalDateTime start = event.getTimestamp().truncatedTo(unit(granularity));
+                String id = id(granularity, start);
+                counters.computeIfAbsent(id, key -> new long[2])[counter]++;
+                starts.put(id, start);
+            }
+        }
+
+        List<Increment> increments = new ArrayList<>(counters.size());
+        for (Map.Entry<String, long[]> counter : counters.entrySet()) {
+            LocalDateTime start = starts.get(counter.getKey());
+            Update update = new Update()
+                    .inc("arrivals", counter.getValue()[0])
+                    .inc("departures", counter.getValue()[1])
+                    .setOnInsert("granularity", counter.getKey().substring(0, counter.getKey().indexOf(':')))
+                    .setOnInsert("start", start);
+            Criteria period = Criteria.where("id").is(counter.getKey());
+            if (batch != null) {
+                period.and("batches").ne(batch);
+                update.push("batches").slice(-BATCHES_KEPT).each(batch);
+            }
+            increments.add(new Increment(new Query(period), update));
+        }
+
+        return increments;
+
+    }
+
+    public void record(Collection<AccessEvent> events) {
+
+        record(null, events);
+
+    }
+
+    /*
+    Counts the events once per batch (null for events recorded one by one). A period that already counted the batch
+    doesn't match the upsert, which then fails inserting its id again: that duplicate key is retried once on its own,
+    as two first increments of a period racing fail the same way, and skipped if it happens again.
+    */
+    public void record(String batch, Collection<AccessEvent> events) {
+
+        List<Increment> increments = increments(batch, events);
+        if (increments.isEmpty()) {
+            return;
+        }
+
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, OccupancyRollup.class);
+        for (Increment increment : increments) {
+            operations.upsert(increment.query(), increment.update());
+        }
+
+        try {
+
+            operations.execute();
+
+        } catch (BulkOperationException exception) {
+
+            if (batch == null || exception.getErrors().stream().anyMatch(error -> !isDuplicateKey(error))) {
+                throw exception;
+            }
+            int duplicates = 0;
+            for (BulkWriteError error : exception.getErrors()) {
+                Increment increment = increments.get(error.getIndex());
+                try {
+                    mongoTemplate.upsert(increment.query(), increment.update(), OccupancyRollup.class);
+                } catch (DuplicateKeyException duplicate) {
+                    duplicates++;
+                }
+            }
+            if (duplicates > 0) {
+                meterRegistry.counter("qrsec.occupancy.duplicate-increments").increment(duplicates);
+                log.warn("Batch {} was already counted in {} of its {} periods, skipped them", batch, duplicates, increments.size());
+            }
+
+        }
+
+    }
+
+    // Periods from the one holding from to the one holding to, the ones without actions included
+    public List<Occupancy> range(String granularity, LocalDateTime from, LocalDateTime to) {
+
+        ChronoUnit unit = unit(granularity);
+        LocalDateTime first = from.truncatedTo(unit);
+        LocalDateTime last = to.truncatedTo(unit);
+        long periods = unit.between(first, last) + 1;
+        if (periods <= 0 || periods > maxPeriods) {
+            throw new IllegalArgumentException("The range must cover between 1 and " + maxPeriods + " periods, it covers " + periods);
+        }
+
+        Query query = new Query(Criteria.where("granularity").is(granularity).and("start").gte(first).lte(last))
+                .with(Sort.by(Sort.Direction.ASC, "start"));
+        query.fields().exclude("batches");
+        Map<LocalDateTime, OccupancyRollup> rollups = new HashMap<>();
+        for (OccupancyRollup rollup : mongoTemplate.find(query, OccupancyRollup.class)) {
+            rollups.put(rollup.getStart(), rollup);
+        }
+
+        long inside = insideBefore(first);
+        List<Occupancy> occupancy = new ArrayList<>((int) periods);
+        for (LocalDateTime start = first; !start.isAfter(last); start = start.plus(1, unit)) {
+            OccupancyRollup rollup = rollups.get(start);
+            long arrivals = rollup == null ? 0 : rollup.getArrivals();
+            long departures = rollup == null ? 0 : rollup.getDepartures();
+            inside += arrivals - departures;
+            occupancy.add(new Occupancy(start, arrivals, departures, inside));
+        }
+
+        return occupancy;
+
+    }
+
+    // Arrivals minus departures before start: whole days before its day, then hours of its day
+    private long insideBefore(LocalDateTime start) {
+
+        LocalDateTime day = start.truncatedTo(ChronoUnit.DAYS);
+        Criteria before = new Criteria().orOperator(
+                Criteria.where("granularity").is(OccupancyRollup.DAY).and("start").lt(day),
+                Criteria.where("granularity").is(OccupancyRollup.HOUR).and("start").gte(day).lt(start)
+        );
+        TypedAggregation<OccupancyRollup> aggregation = Aggregation.newAggregation(
+                OccupancyRollup.class,
+                Aggregation.match(before),
+                Aggregation.group().sum("arrivals").as("arrivals").sum("departures").as("departures")
+        );
+        Document totals = mongoTemplate.aggregate(aggregation, Document.class).getUniqueMappedResult();
+        if (totals == null) {
+            return 0;
+        }
+
+        return ((Number) totals.get("arrivals")).longValue() - ((Number) totals.get("departures")).longValue();
+
+    }
+
+    // First deployment: nothing was counted yet
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+
+        if (!mongoTemplate.exists(new Query(), OccupancyRollup.class)) {
+            backfill();
+        }
+
+    }
+
+    /*
+    Recounts the rollups from the access events, plus the arrival and departure kept on invites scanned before the
+    access events existed (only the last one of each is known).
+    Periods older than backfill-lag are settled, no increment should land on them anymore: their counters are $set,
+    so running it again gives the same result. The recent ones may still get increments between the aggregation and
+    the write (a late client timestamp, a write-behind flush that is behind), a $set would wipe them: they are only
+    written when they don't exist yet.
+    */
+    public void backfill() {
+
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDateTime settledHour = LocalDateTime.now().minus(backfillLag).truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime settledDay = settledHour.truncatedTo(ChronoUnit.DAYS);
+
+        TreeMap<LocalDateTime, long[]> hours = new TreeMap<>();
+        String events = mongoTemplate.getCollectionName(AccessEvent.class);
+        List<Document> eventsPipeline = List.of(
+                new Document("$match", new Document("action", new Document("$in", List.of(ARRIVAL, DEPARTURE)))),
+                new Document("$group", new Document("_id", new Document("hour", hourOf("$timestamp", zone)).append("action", "$action"))
+                        .append("count", new Document("$sum", 1)))
+        );
+        for (Document group : mongoTemplate.getCollection(events).aggregate(eventsPipeline)) {
+            Document key = group.get("_id", Document.class);
+            add(hours, key.getDate("hour"), ARRIVAL.equals(key.getString("action")) ? 0 : 1, group, zone);
+        }
+
+        // Invites scanned before the first access event only kept their last arrival and departure
+        Document firstEvent = mongoTemplate.getCollection(events).find()
+                .sort(new Document("timestamp", 1)).projection(new Document("timestamp", 1)).first();
+        Date cutoff = firstEvent != null ? firstEvent.getDate("timestamp") : new Date();
+        String invites = mongoTemplate.getCollectionName(Invite.class);
+        for (String field : List.of("arrival_time", "departure_time")) {
+            List<Document> legacyPipeline = List.of(
+                    new Document("$match", new Document(field, new Document("$lt", cutoff))),
+                    new Document("$group", new Document("_id", hourOf("$" + field, zone)).append("count", new Document("$sum", 1)))
+            );
+            for (Document group : mongoTemplate.getCollection(invites).aggregate(legacyPipeline)) {
+                add(hours, group.getDate("_id"), "arrival_time".equals(field) ? 0 : 1, group, zone);
+            }
+        }
+
+        TreeMap<LocalDateTime, long[]> days = new TreeMap<>();
+        for (Map.Entry<LocalDateTime, long[]> hour : hours.entrySet()) {
+            long[] day = days.computeIfAbsent(hour.getKey().truncatedTo(ChronoUnit.DAYS), key -> new long[2]);
+            day[0] += hour.getValue()[0];
+            day[1] += hour.getValue()[1];
+        }
+
+        int settled = write(OccupancyRollup.HOUR, hours.headMap(settledHour), true) + write(OccupancyRollup.DAY, days.headMap(settledDay), true);
+        int recent = write(OccupancyRollup.HOUR, hours.tailMap(settledHour), false) + write(OccupancyRollup.DAY, days.tailMap(settledDay), false);
+        log.info("Occupancy rollups backfilled: {} settled periods written, {} recent ones written if missing", settled, recent);
+
+    }
+
+    // Settled counters replace the stored ones, the others only fill a period nothing was counted in yet
+    private int write(String granularity, Map<LocalDateTime, long[]> counters, boolean settled) {
+
+        BulkOperations operations = null;
+        int pending = 0;
+        for (Map.Entry<LocalDateTime, long[]> counter : counters.entrySet()) {
+            if (operations == null) {
+                operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, OccupancyRollup.class);
+            }
+            Update update = new Update()
+                    .setOnInsert("granularity", granularity)
+                    .setOnInsert("start", counter.getKey());
+            if (settled) {
+                update.set("arrivals", counter.getValue()[0]).set("departures", counter.getValue()[1]);
+            } else {
+                update.setOnInsert("arrivals", counter.getValue()[0]).setOnInsert("departures", counter.getValue()[1]);
+            }
+            operations.upsert(new Query(Criteria.where("id").is(id(granularity, counter.getKey()))), update);
+            if (++pending == BACKFILL_CHUNK) {
+                operations.execute();
+                operations = null;
+                pending = 0;
+            }
+        }
+        if (operations != null) {
+            operations.execute();
+        }
+
+        return counters.size();
+
+    }
+
+    private static boolean isDuplicateKey(BulkWriteError error) {
+
+        return ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY;
+
+    }
+
+    private static Document hourOf(String field, ZoneId zone) {
+
+        return new Document("$dateTrunc", new Document("date", field).append("unit", "hour").append("timezone", zone.getId()));
+
+    }
+
+    private static void add(Map<LocalDateTime, long[]> hours, Date hour, int counter, Document group, ZoneId zone) {
+
+        LocalDateTime start = LocalDateTime.ofInstant(hour.toInstant(), zone);
+        hours.computeIfAbsent(start, key -> new long[2])[counter] += ((Number) group.get("count")).longValue();
+
+    }
+
+    private static ChronoUnit unit(String granularity) {
+
+        return switch (granularity) {
+            case OccupancyRollup.HOUR -> ChronoUnit.HOURS;
+            case OccupancyRollup.DAY -> ChronoUnit.DAYS;
+            default -> throw new IllegalArgumentException("Granularity " + granularity + " invalid, it must be hour or day");
+        };
+
+    }
+
+    private static String id(String granularity, LocalDateTime start) {
+
+        return granularity + ":" + start;
+
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.lsoria.qrsec.service.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.lsoria.qrsec.domain.model.User;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/*
+    Keeps the Users resolved by username during the current HTTP request, so controllers and services
+    asking for the same User share one lookup. Outside a request every call goes to the loader.
+ */
+@Component
+public class RequestUserCache {
+
+    private static final String USERS_ATTRIBUTE = RequestUserCache.class.getName() + ".users";
+    private static final String LOOKUPS_ATTRIBUTE = RequestUserCache.class.getName() + ".lookups";
+
+    private final AtomicLong totalLookups = new AtomicLong();
+    private final AtomicLong totalHits = new AtomicLong();
+
+    public Optional<User> get(String username, Function<String, Optional<User>> loader) {
+
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+
+            return lookup(null, username, loader);
+
+        }
+
+        Map<String, Optional<User>> users = users(attributes);
+        Optional<User> user = users.get(username);
+        if (user != null) {
+
+            this.totalHits.incrementAndGet();
+
+            return user;
+
+        }
+
+        user = lookup(attributes, username, loader);
+        users.put(username, user);
+
+        return user;
+
+    }
+
+    public void evict(String username) {
+
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null || username == null) {
+            return;
+        }
+
+        users(attributes).remove(username);
+
+    }
+
+    // Number of loader calls (database lookups) made during the current request
+    public int getLookupsForCurrentRequest() {
+
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return 0;
+        }
+
+        int[] lookups = (int[]) attributes.getAttribute(LOOKUPS_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+
+        return lookups == null ? 0 : lookups[0];
+
+    }
+
+    public long getTotalLookups() {
+        return this.totalLookups.get();
+    }
+
+    public long getTotalHits() {
+        return this.totalHits.get();
+    }
+
+    private Optional<User> lookup(RequestAttributes attributes, String username, Function<String, Optional<User>> loader) {
+
+        this.totalLookups.incrementAndGet();
+        if (attributes != null) {
+            int[] lookups = (int[]) attributes.getAttribute(LOOKUPS_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+            if (lookups == null) {
+                lookups = new int[1];
+                attributes.setAttribute(LOOKUPS_ATTRIBUTE, lookups, RequestAttributes.SCOPE_REQUEST);
+            }
+            lookups[0]++;
+        }
+
+        return loader.apply(username);
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Optional<User>> users(RequestAttributes attributes) {
+
+        Map<String, Optional<User>> users = (Map<String, Optional<User>>) attributes.getAttribute(USERS_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (users == null) {
+            users = new HashMap<>();
+            attributes.setAttribute(USERS_ATTRIBUTE, users, RequestAttributes.SCOPE_REQUEST);
+        }
+
+        return users;
+
+    }
+
+}
@@ -0,0 +1,278 @@
+package com.lsoria.qrsec.service.cache;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.lsoria.qrsec.domain.event.EntityChangedEvent;
+import com.lsoria.qrsec.domain.model.Guest;
+import com.lsoria.qrsec.domain.model.Invite;
+import com.lsoria.qrsec.domain.model.InviteSchedule;
+import com.lsoria.qrsec.repository.InviteCriteria;
+import com.lsoria.qrsec.repository.InviteRepository;
+import com.lsoria.qrsec.repository.Queries;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/*
+    The invites valid today (enabled and allowed on today's day of the week) with their references resolved and their
+    schedule compiled, sorted by id so the guard listing pages with the same cursor as MongoDB.
+    Built at startup and at midnight, kept up to date by InviteService on every change.
+    Until it is built for the current day (startup, or a missed midnight) it reports itself as not ready and callers
+    go to MongoDB.
+    Refreshes read MongoDB outside the lock, so a change carrying an older version than the one already applied
+    (a read that raced an update) is dropped.
+ */
+@Slf4j
+@Component
+public class TodayInviteIndex {
+
+    @Autowired
+    InviteRepository inviteRepository;
+
+    private final Object lock = new Object();
+
+    private volatile NavigableMap<String, Invite> invites = new ConcurrentSkipListMap<>();
+    // Date the index was built for, a day of the week alone would match the same day a week later
+    private volatile LocalDate date;
+    private volatile int day = -1;
+
+    // Changes applied while a rebuild reads MongoDB, replayed on the rebuilt map (null value means removed)
+    private Map<String, Invite> pendingChanges;
+    // Version of the last change of each id since the rebuild, also for the ones not indexed (Long.MAX_VALUE once deleted)
+    private Map<String, Long> versions = new HashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${qrsec.invites.today-index.cron:0 0 0 * * *}")
+    public void rebuild() {
+
+        LocalDateTime now = LocalDateTime.now();
+        int today = InviteSchedule.dayOfWeek(now);
+
+        synchronized (this.lock) {
+            this.pendingChanges = new HashMap<>();
+        }
+
+        NavigableMap<String, Invite> rebuilt = new ConcurrentSkipListMap<>();
+        try {
+            for (Invite invite : inviteRepository.findAllResolved(new Query(InviteCriteria.enabledForDay(today)))) {
+                // Compiled now rather than on the first scan
+                invite.getSchedule();
+                rebuilt.put(invite.getId(), invite);
+            }
+        } catch (RuntimeException exception) {
+            synchronized (this.lock) {
+                this.pendingChanges = null;
+            }
+            log.error("Couldn't build the index of today's invites, MongoDB will be used.\nMessage: {}.", exception.getMessage());
+            return;
+        }
+
+        synchronized (this.lock) {
+            Map<String, Long> versions = new HashMap<>();
+            for (Map.Entry<String, Invite> change : this.pendingChanges.entrySet()) {
+                Invite read = rebuilt.get(change.getKey());
+                long version = version(change.getValue());
+                if (read != null && version(read) > version) {
+                    version = version(read);
+                } else {
+                    put(rebuilt, today, change.getKey(), change.getValue());
+                }
+                versions.put(change.getKey(), version);
+            }
+            this.pendingChanges = null;
+            this.versions = versions;
+            this.invites = rebuilt;
+            this.day = today;
+            this.date = now.toLocalDate();
+        }
+
+        log.info("Index of today's invites rebuilt with {} invites", rebuilt.size());
+
+    }
+
+    public boolean isReady() {
+
+        return LocalDate.now().equals(this.date);
+
+    }
+
+    public Optional<Invite> get(String id) {
+
+        return Optional.ofNullable(this.invites.get(id));
+
+    }
+
+    // Keyset page after the cursor, with one extra element like Queries.page so the caller knows if there is a next page
+    public List<Invite> page(String cursor, int limit) {
+
+        NavigableMap<String, Invite> invites = this.invites;
+        NavigableMap<String, Invite> after = cursor == null || cursor.isBlank() ? invites : invites.tailMap(cursor, false);
+
+        List<Invite> page = new ArrayList<>(Math.min(limit + 1, after.size()));
+        for (Invite invite : after.values()) {
+            if (page.size() > limit) {
+                break;
+            }
+            page.add(invite);
+        }
+
+        return page;
+
+    }
+
+    // The invite as it is now, it is indexed only if it is valid today
+    public void apply(Invite invite) {
+
+        change(invite.getId(), invite);
+
+    }
+
+    // Reads the invite again with its references resolved (a saved invite only has what the client sent)
+    public void refresh(String id) {
+
+        List<Invite> found = inviteRepository.findAllResolved(new Query(Criteria.where("_id").is(Queries.storedId(id))));
+        change(id, found.isEmpty() ? null : found.get(0));
+
+    }
+
+    // Same as refresh, one query for all of them
+    public void refreshAll(Collection<String> ids) {
+
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        List<Object> storedIds = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            storedIds.add(Queries.storedId(id));
+        }
+
+        Map<String, Invite> found = new HashMap<>();
+        for (Invite invite : inviteRepository.findAllResolved(new Query(Criteria.where("_id").in(storedIds)))) {
+            found.put(invite.getId(), invite);
+        }
+        for (String id : ids) {
+            change(id, found.get(id));
+        }
+
+    }
+
+    public void remove(String id) {
+
+        change(id, null);
+
+    }
+
+    public int size() {
+
+        return this.invites.size();
+
+    }
+
+    // Changes made by any node, an indexed invite also holds copies of its owner and guests
+    @EventListener
+    public void onEntityChanged(EntityChangedEvent event) {
+
+        if (event.isEverything()) {
+            rebuild();
+        } else if (event.concerns("invites")) {
+            if (event.deleted()) {
+                remove(event.id());
+            } else {
+                refresh(event.id());
+            }
+        } else if (event.concerns("users") || event.concerns("guests")) {
+            for (Invite invite : this.invites.values()) {
+                if (references(invite, event.id())) {
+                    refresh(invite.getId());
+                }
+            }
+        }
+
+    }
+
+    private void change(String id, Invite invite) {
+
+        synchronized (this.lock) {
+            if (isOlder(id, invite)) {
+                return;
+            }
+            this.versions.put(id, version(invite));
+            put(this.invites, this.day, id, invite);
+            if (this.pendingChanges != null) {
+                this.pendingChanges.put(id, invite);
+            }
+        }
+
+    }
+
+    // Same version is not older: a refresh after a change of the owner or a guest brings the same invite resolved again
+    private boolean isOlder(String id, Invite invite) {
+
+        if (invite == null) {
+            return false;
+        }
+        Long applied = this.versions.get(id);
+        if (applied != null && version(invite) < applied) {
+            return true;
+        }
+        Invite indexed = this.invites.get(id);
+
+        return indexed != null && version(invite) < version(indexed);
+
+    }
+
+    // Invites stored before versions existed count as version 0, a removed one is newer than any other
+    private static long version(Invite invite) {
+
+        if (invite == null) {
+            return Long.MAX_VALUE;
+        }
+
+        return invite.getVersion() == null ? 0 : invite.getVersion();
+
+    }
+
+    private static boolean references(Invite invite, String id) {
+
+        if (invite.getOwner() != null && id.equals(invite.getOwner().getId())) {
+            return true;
+        }
+        if (invite.getGuests() != null) {
+            for (Guest guest : invite.getGuests()) {
+                if (guest != null && id.equals(guest.getId())) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+
+    }
+
+    private static void put(NavigableMap<String, Invite> invites, int day, String id, Invite invite) {
+
+        if (invite != null && Boolean.TRUE.equals(invite.getEnabled()) && invite.getSchedule().allowsDay(day)) {
+            invites.put(id, invite);
+        } else {
+            invites.remove(id);
+        }
+
+    }
+
+}
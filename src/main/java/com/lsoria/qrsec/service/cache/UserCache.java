@@ -0,0 +1,94 @@
+package com.lsoria.qrsec.service.cache;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Function;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.lsoria.qrsec.domain.event.EntityChangedEvent;
+import com.lsoria.qrsec.domain.model.User;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/*
+    Process wide cache of Users by username (email). Entries expire after a fixed TTL and the cache is bounded
+    in size, any change to a User must invalidate its entry explicitly so roles and enabled flag are never stale.
+    Unknown usernames are not cached, a new signup is visible right away.
+ */
+@Component
+public class UserCache {
+
+    private final Cache<String, User> users;
+
+    public UserCache(
+            @Value("${qrsec.cache.users.maximum-size:10000}") long maximumSize,
+            @Value("${qrsec.cache.users.ttl:5m}") Duration ttl
+    ) {
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    public Optional<User> get(String username, Function<String, Optional<User>> loader) {
+
+        return Optional.ofNullable(this.users.get(username, key -> loader.apply(key).orElse(null)));
+
+    }
+
+    public void invalidate(String username) {
+
+        if (username != null) {
+            this.users.invalidate(username);
+        }
+
+    }
+
+    public void invalidateAll() {
+
+        this.users.invalidateAll();
+
+    }
+
+    // Entries are keyed by username, a change seen by id (possibly of the username itself) has to look for the User
+    public void invalidateById(String id) {
+
+        this.users.asMap().values().removeIf(user -> id.equals(user.getId()));
+
+    }
+
+    @EventListener
+    public void onEntityChanged(EntityChangedEvent event) {
+
+        if (event.isEverything()) {
+            invalidateAll();
+        } else if (event.concerns("users")) {
+            invalidateById(event.id());
+        }
+
+    }
+
+    public long size() {
+
+        return this.users.estimatedSize();
+
+    }
+
+    public CacheStats stats() {
+
+        return this.users.stats();
+
+    }
+
+    public Cache<String, User> getNativeCache() {
+
+        return this.users;
+
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.lsoria.qrsec.service.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+@Component
+@Endpoint(id = "usercache")
+public class UserCacheEndpoint {
+
+    @Autowired
+    UserCache userCache;
+
+    @ReadOperation
+    public Map<String, Object> stats() {
+
+        CacheStats stats = userCache.stats();
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("size", userCache.size());
+        response.put("hits", stats.hitCount());
+        response.put("misses", stats.missCount());
+        response.put("hitRate", stats.hitRate());
+        response.put("evictions", stats.evictionCount());
+        response.put("averageLoadPenaltyNanos", stats.averageLoadPenalty());
+
+        return response;
+
+    }
+
+}
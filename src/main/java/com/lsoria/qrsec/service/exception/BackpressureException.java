@@ -0,0 +1,9 @@
+package com.lsoria.qrsec.service.exception;
+
+public class BackpressureException extends Exception {
+
+    public BackpressureException(String message) {
+        super(message);
+    }
+
+}
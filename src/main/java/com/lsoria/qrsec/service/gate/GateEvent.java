@@ -0,0 +1,9 @@
+package com.lsoria.qrsec.service.gate;
+
+import java.time.LocalDateTime;
+
+/*
+    An arrival or departure acknowledged to the guard but maybe not in MongoDB yet. sequence orders the journal.
+ */
+public record GateEvent(long sequence, String inviteId, String action, LocalDateTime timestamp, String guard, String guestId) {
+}
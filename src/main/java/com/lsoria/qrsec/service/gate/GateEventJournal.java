@@ -0,0 +1,224 @@
+package com.lsoria.qrsec.service.gate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+    Local append-only file of the gate events waiting to be flushed, one JSON line each, forced to disk before
+    the scan is acknowledged. Appends only write the line, sync() forces them in groups: one fsync covers every scan
+    waiting for it. The checkpoint file holds the last sequence known to be in MongoDB: on startup
+    the events after it are flushed again, so an event can be written twice after a crash but is never lost.
+    The journal is truncated whenever everything appended has been flushed, so it only holds the backlog.
+    Its id (journal name + ".id", created with it) tells its sequences apart from the ones of other nodes' journals.
+    Events that could never be written are appended to the dead letter file (journal name + ".dead") instead,
+    to be looked at and replayed by hand.
+ */
+@Slf4j
+final class GateEventJournal implements Closeable {
+
+    private final Path file;
+    private final Path checkpoint;
+    private final Path deadLetters;
+    private final String id;
+    private final ObjectMapper objectMapper;
+    private final FileChannel channel;
+
+    private long lastSequence;
+    private long flushedSequence;
+    // Appended and not forced yet, in sequence order
+    private final List<GateEvent> unsynced = new ArrayList<>();
+
+    // A lock rather than the monitor: scans waiting for a force don't pin their virtual thread
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = this.syncLock.newCondition();
+    private boolean syncing;
+    private long durableSequence;
+    private long failedSequence;
+    private IOException failure;
+
+    GateEventJournal(Path file, ObjectMapper objectMapper) throws IOException {
+
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        this.file = file;
+        this.checkpoint = file.resolveSibling(file.getFileName() + ".checkpoint");
+        this.deadLetters = file.resolveSibling(file.getFileName() + ".dead");
+        this.objectMapper = objectMapper;
+        Path idFile = file.resolveSibling(file.getFileName() + ".id");
+        if (!Files.exists(idFile)) {
+            Files.writeString(idFile, UUID.randomUUID().toString(), StandardCharsets.UTF_8);
+        }
+        this.id = Files.readString(idFile).trim();
+        this.flushedSequence = Files.exists(this.checkpoint) ? Long.parseLong(Files.readString(this.checkpoint).trim()) : 0;
+        this.lastSequence = this.flushedSequence;
+        this.durableSequence = this.flushedSequence;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+    }
+
+    String id() {
+
+        return this.id;
+
+    }
+
+    // Events appended after the checkpoint, in order. A line cut short by a crash was never acknowledged and is skipped
+    synchronized List<GateEvent> pending() throws IOException {
+
+        List<GateEvent> pending = new ArrayList<>();
+        for (String line : Files.readAllLines(this.file, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            GateEvent event;
+            try {
+                event = this.objectMapper.readValue(line, GateEvent.class);
+            } catch (IOException exception) {
+                log.warn("Skipping unreadable gate journal line: {}", exception.getMessage());
+                continue;
+            }
+            this.lastSequence = Math.max(this.lastSequence, event.sequence());
+            if (event.sequence() > this.flushedSequence) {
+                pending.add(event);
+            }
+        }
+
+        return pending;
+
+    }
+
+    synchronized GateEvent append(String inviteId, String action, LocalDateTime timestamp, String guard, String guestId) throws IOException {
+
+        GateEvent event = new GateEvent(this.lastSequence + 1, inviteId, action, timestamp, guard, guestId);
+        byte[] json = this.objectMapper.writeValueAsBytes(event);
+        ByteBuffer line = ByteBuffer.allocate(json.length + 1).put(json).put((byte) '\n').flip();
+        while (line.hasRemaining()) {
+            this.channel.write(line);
+        }
+        this.lastSequence = event.sequence();
+        this.unsynced.add(event);
+
+        return event;
+
+    }
+
+    /*
+    Returns once the event with the sequence is on disk. The first caller that finds no force running forces every
+    line appended so far and hands their events to durable in order. The callers that arrive meanwhile wait for it,
+    or for the next force, which covers all of them at once. If a force fails, its callers get the exception.
+    Their events stay in the file, so the next force hands them over with its own.
+    */
+    void sync(long sequence, Consumer<List<GateEvent>> durable) throws IOException {
+
+        this.syncLock.lock();
+        try {
+            while (this.durableSequence < sequence) {
+                if (this.failedSequence >= sequence) {
+                    throw new IOException("Couldn't force the gate event journal to disk", this.failure);
+                }
+                if (!this.syncing) {
+                    break;
+                }
+                this.synced.await();
+            }
+            if (this.durableSequence >= sequence) {
+                return;
+            }
+            this.syncing = true;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the gate event journal to be forced to disk");
+        } finally {
+            this.syncLock.unlock();
+        }
+
+        List<GateEvent> events;
+        synchronized (this) {
+            events = new ArrayList<>(this.unsynced);
+            this.unsynced.clear();
+        }
+        IOException failure = null;
+        try {
+            this.channel.force(false);
+            durable.accept(events);
+        } catch (IOException exception) {
+            failure = exception;
+            synchronized (this) {
+                this.unsynced.addAll(0, events);
+            }
+        } finally {
+            this.syncLock.lock();
+            try {
+                this.syncing = false;
+                long last = events.isEmpty() ? sequence : events.get(events.size() - 1).sequence();
+                if (failure == null) {
+                    this.durableSequence = Math.max(this.durableSequence, last);
+                } else {
+                    this.failedSequence = Math.max(this.failedSequence, last);
+                    this.failure = failure;
+                }
+                this.synced.signalAll();
+            } finally {
+                this.syncLock.unlock();
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+
+    }
+
+    synchronized void deadLetter(GateEvent event) throws IOException {
+
+        byte[] json = this.objectMapper.writeValueAsBytes(event);
+        byte[] line = new byte[json.length + 1];
+        System.arraycopy(json, 0, line, 0, json.length);
+        line[json.length] = '\n';
+        Files.write(this.deadLetters, line, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+
+    }
+
+    // Every event up to sequence is in MongoDB (or set aside)
+    synchronized void flushed(long sequence) throws IOException {
+
+        this.flushedSequence = Math.max(this.flushedSequence, sequence);
+        Path temporary = this.checkpoint.resolveSibling(this.checkpoint.getFileName() + ".tmp");
+        Files.writeString(temporary, Long.toString(this.flushedSequence), StandardCharsets.UTF_8);
+        Files.move(temporary, this.checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // Sequences keep growing from the checkpoint, so emptying the file loses nothing
+        if (this.flushedSequence == this.lastSequence) {
+            this.channel.truncate(0);
+            this.channel.force(true);
+        }
+
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+
+        this.channel.close();
+
+    }
+
+}
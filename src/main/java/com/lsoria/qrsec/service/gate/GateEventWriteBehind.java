@@ -0,0 +1,410 @@
+package com.lsoria.qrsec.service.gate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.lsoria.qrsec.domain.model.AccessEvent;
+import com.lsoria.qrsec.domain.model.Invite;
+import com.lsoria.qrsec.service.AccessEventService;
+import com.lsoria.qrsec.service.analytics.OccupancyService;
+import com.lsoria.qrsec.service.cache.TodayInviteIndex;
+import com.lsoria.qrsec.service.exception.BackpressureException;
+import com.lsoria.qrsec.service.token.InviteRevocationList;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.context.WebServerGracefulShutdownLifecycle;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+/*
+    Write-behind of arrivals and departures: a scan is acknowledged once its event is in the local journal (forced
+    to disk, concurrent scans share one fsync) and in a bounded queue. A single thread flushes the queue in bulk
+    writes when batch-size events are waiting or flush-interval has passed since the first one: the invites get
+    their arrival or departure with a $max (a scan flushed late never replaces a newer time written meanwhile, e.g.
+    by a guard whose clock is ahead) and their version incremented, the access events are inserted and the occupancy
+    rollups counted. Both the blocking and the reactive gate endpoints go through it.
+    A full queue rejects the scan (BackpressureException, 503) instead of growing, a failed flush is retried
+    after retry-backoff with the same batch. While MongoDB is unreachable it is retried until it comes back; any other
+    failure max-attempts times in a row splits the batch in halves, and a single event that still can't be written
+    is set aside in the journal's dead letter file so the events behind it keep flowing.
+    Until a flush the invite in MongoDB doesn't show the scan.
+    Starts before the web server and stops after it, so every scan it accepts finds the journal open and replayed.
+    Enabled with qrsec.gate.write-behind.enabled=true.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "qrsec.gate.write-behind.enabled", havingValue = "true")
+public class GateEventWriteBehind implements SmartLifecycle {
+
+    private final MongoTemplate mongoTemplate;
+    private final TodayInviteIndex todayInviteIndex;
+    private final OccupancyService occupancyService;
+    private final InviteRevocationList inviteRevocationList;
+    private final GateEventJournal journal;
+    private final BlockingQueue<GateEvent> queue;
+    // Room in the queue, taken before the journal write and given back when the event leaves the queue
+    private final Semaphore slots;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Duration retryBackoff;
+    private final int maxAttempts;
+
+    private final Timer flushTimer;
+    private final DistributionSummary batchSizes;
+    private final Counter rejected;
+    private final Counter flushFailures;
+    private final Counter deadLettered;
+
+    // Read from the journal before any scan is appended, so new events get sequences after the unflushed ones
+    private List<GateEvent> replayed;
+    private volatile boolean running;
+    private Thread thread;
+
+    public GateEventWriteBehind(
+            MongoTemplate mongoTemplate,
+            TodayInviteIndex todayInviteIndex,
+            OccupancyService occupancyService,
+            InviteRevocationList inviteRevocationList,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${qrsec.gate.write-behind.journal:data/gate-events.journal}") Path journalFile,
+            @Value("${qrsec.gate.write-behind.capacity:10000}") int capacity,
+            @Value("${qrsec.gate.write-behind.batch-size:500}") int batchSize,
+            @Value("${qrsec.gate.write-behind.flush-interval:200ms}") Duration flushInterval,
+            @Value("${qrsec.gate.write-behind.retry-backoff:1s}") Duration retryBackoff,
+            @Value("${qrsec.gate.write-behind.max-attempts:5}") int maxAttempts
+    ) throws IOException {
+        this.mongoTemplate = mongoTemplate;
+        this.todayInviteIndex = todayInviteIndex;
+        this.occupancyService = occupancyService;
+        this.inviteRevocationList = inviteRevocationList;
+        this.journal = new GateEventJournal(journalFile, objectMapper);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.slots = new Semaphore(capacity);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.retryBackoff = retryBackoff;
+        this.maxAttempts = maxAttempts;
+        this.replayed = this.journal.pending();
+        if (!this.replayed.isEmpty()) {
+            log.info("{} gate events from the journal will be flushed again, the ones already counted in the occupancy rollups are counted again", this.replayed.size());
+        }
+
+        Gauge.builder("qrsec.gate.queue.depth", this.queue, BlockingQueue::size)
+                .description("Gate events acknowledged and waiting to be flushed")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("qrsec.gate.flush")
+                .description("Time to write a batch of gate events to MongoDB")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("qrsec.gate.flush.batch")
+                .description("Gate events per flush")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("qrsec.gate.rejected")
+                .description("Scans rejected because the queue was full")
+                .register(meterRegistry);
+        this.flushFailures = Counter.builder("qrsec.gate.flush.failures")
+                .description("Flushes that failed and were retried")
+                .register(meterRegistry);
+        this.deadLettered = Counter.builder("qrsec.gate.dead-lettered")
+                .description("Gate events that couldn't be written and were set aside in the dead letter file")
+                .register(meterRegistry);
+    }
+
+    public static boolean handles(String action) {
+
+        return "arrival".equals(action) || "departure".equals(action);
+
+    }
+
+    /*
+    Durable once it returns. The queue is filled by the journal's sync, in sequence order, with every event its
+    fsync covered, so the flushed checkpoint never passes an event that isn't queued yet.
+    */
+    public void enqueue(String inviteId, String action, LocalDateTime timestamp, String guard, String guestId) throws BackpressureException, IOException {
+
+        if (!this.slots.tryAcquire()) {
+            this.rejected.increment();
+            throw new BackpressureException("Gate event queue is full (" + this.queue.size() + " events), scan of " + inviteId + " rejected");
+        }
+
+        GateEvent event;
+        try {
+            event = this.journal.append(inviteId, action, timestamp, guard, guestId);
+        } catch (IOException | RuntimeException exception) {
+            this.slots.release();
+            throw exception;
+        }
+        this.journal.sync(event.sequence(), this.queue::addAll);
+
+    }
+
+    @Override
+    public synchronized void start() {
+
+        if (this.running) {
+            return;
+        }
+
+        List<GateEvent> pending = this.replayed;
+        this.replayed = List.of();
+        this.running = true;
+        this.thread = Thread.ofPlatform().name("gate-write-behind").daemon().start(() -> run(pending));
+
+    }
+
+    // Lets the thread write what is queued, whatever can't be written stays in the journal for the next start
+    @Override
+    public void stop() {
+
+        Thread thread;
+        synchronized (this) {
+            this.running = false;
+            thread = this.thread;
+            this.thread = null;
+        }
+        if (thread != null) {
+            try {
+                thread.join(this.flushInterval.plus(this.retryBackoff).multipliedBy(2).toMillis());
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            this.journal.close();
+        } catch (IOException exception) {
+            log.warn("Couldn't close the gate event journal: {}", exception.getMessage());
+        }
+
+    }
+
+    @Override
+    public boolean isRunning() {
+
+        return this.running;
+
+    }
+
+    // Lower than the web server's phase: started before it accepts requests, stopped once it no longer does
+    @Override
+    public int getPhase() {
+
+        return WebServerGracefulShutdownLifecycle.SMART_LIFECYCLE_PHASE - 2048;
+
+    }
+
+    private void run(List<GateEvent> replayed) {
+
+        Deque<GateEvent> backlog = new ArrayDeque<>(replayed);
+        List<GateEvent> batch = new ArrayList<>(this.batchSize);
+        int failures = 0;
+        while (this.running) {
+
+            try {
+
+                if (batch.isEmpty()) {
+                    fill(batch, backlog);
+                }
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                    batch.clear();
+                }
+                failures = 0;
+
+            } catch (InterruptedException exception) {
+
+                Thread.currentThread().interrupt();
+                break;
+
+            } catch (RuntimeException exception) {
+
+                this.flushFailures.increment();
+                // Nothing can be written while MongoDB or the disk is unavailable, there is no point in splitting
+                if (!isTransient(exception) && ++failures >= this.maxAttempts) {
+                    failures = 0;
+                    if (setAside(batch, backlog, exception)) {
+                        continue;
+                    }
+                }
+                log.error("Couldn't flush {} gate events, retrying in {}.\nMessage: {}.", batch.size(), this.retryBackoff, exception.getMessage());
+                try {
+                    Thread.sleep(this.retryBackoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+
+            }
+
+        }
+
+        // Last attempt on shutdown, in order: the batch being retried, the replayed events, then the queue
+        backlog.addAll(this.queue);
+        this.queue.clear();
+        try {
+            while (!batch.isEmpty() || !backlog.isEmpty()) {
+                // The batch being retried is flushed as it is, so its occupancy rollups recognize it
+                if (batch.isEmpty()) {
+                    while (!backlog.isEmpty() && batch.size() < this.batchSize) {
+                        batch.add(backlog.poll());
+                    }
+                }
+                flush(batch);
+                batch.clear();
+            }
+        } catch (RuntimeException exception) {
+            log.warn("{} gate events couldn't be flushed on shutdown, they stay in the journal.\nMessage: {}.", batch.size() + backlog.size(), exception.getMessage());
+        }
+
+    }
+
+    /*
+    The batch failed max-attempts times: a batch of several events keeps its first half and puts the second one back
+    in front of the backlog, so the events that can't be written are narrowed down. A single event is appended to the
+    dead letter file and checkpointed as flushed. False if it couldn't be set aside, the batch is retried.
+    */
+    private boolean setAside(List<GateEvent> batch, Deque<GateEvent> backlog, RuntimeException exception) {
+
+        if (batch.size() > 1) {
+            List<GateEvent> secondHalf = batch.subList(batch.size() / 2, batch.size());
+            for (int i = secondHalf.size() - 1; i >= 0; i--) {
+                backlog.addFirst(secondHalf.get(i));
+            }
+            secondHalf.clear();
+            log.warn("A batch of gate events failed {} times, splitting it.\nMessage: {}.", this.maxAttempts, exception.getMessage());
+            return true;
+        }
+
+        GateEvent event = batch.get(0);
+        try {
+            this.journal.deadLetter(event);
+            this.journal.flushed(event.sequence());
+        } catch (IOException ioException) {
+            log.error("Couldn't set aside gate event {}.\nMessage: {}.", event.sequence(), ioException.getMessage());
+            return false;
+        }
+        batch.clear();
+        this.deadLettered.increment();
+        log.error("Gate event {} ({} of invite {}) failed {} times, moved to the dead letter file.\nMessage: {}.",
+                event.sequence(), event.action(), event.inviteId(), this.maxAttempts, exception.getMessage());
+
+        return true;
+
+    }
+
+    private static boolean isTransient(RuntimeException exception) {
+
+        return exception instanceof DataAccessResourceFailureException
+                || exception instanceof TransientDataAccessException
+                || exception instanceof UncheckedIOException;
+
+    }
+
+    // Replayed events first. Otherwise waits for one event, then for more until the batch is full or the interval passed
+    private void fill(List<GateEvent> batch, Deque<GateEvent> backlog) throws InterruptedException {
+
+        while (!backlog.isEmpty() && batch.size() < this.batchSize) {
+            batch.add(backlog.poll());
+        }
+        if (!batch.isEmpty()) {
+            return;
+        }
+
+        GateEvent first = this.queue.poll(this.flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        this.slots.release();
+
+        long deadline = System.nanoTime() + this.flushInterval.toNanos();
+        while (batch.size() < this.batchSize) {
+            this.slots.release(this.queue.drainTo(batch, this.batchSize - batch.size()));
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= this.batchSize || remaining <= 0) {
+                return;
+            }
+            GateEvent next = this.queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            this.slots.release();
+        }
+
+    }
+
+    /*
+    Invites (the latest time of each field wins), then the events and rollups. A retry inserts the access events
+    again, the rollups only count the batch (journal id and sequences) in the periods it didn't reach.
+    */
+    private void flush(List<GateEvent> batch) {
+
+        this.flushTimer.record(() -> {
+
+            LocalDateTime now = LocalDateTime.now();
+            BulkOperations invites = this.mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, Invite.class);
+            List<AccessEvent> events = new ArrayList<>(batch.size());
+            Set<String> inviteIds = new LinkedHashSet<>();
+            Set<String> departed = new LinkedHashSet<>();
+            for (GateEvent event : batch) {
+                Update update = new Update().set("lastModifiedAt", now).inc("version", 1);
+                if ("arrival".equals(event.action())) {
+                    update.max("arrivalTime", event.timestamp());
+                } else {
+                    // Tokens issued before the departure reached MongoDB don't carry it
+                    update.max("departureTime", event.timestamp()).max("tokensValidFrom", now);
+                    departed.add(event.inviteId());
+                }
+                invites.updateOne(new Query(Criteria.where("id").is(event.inviteId())), update);
+                events.add(AccessEventService.event(event.inviteId(), event.action(), event.timestamp(), event.guard(), event.guestId()));
+                inviteIds.add(event.inviteId());
+            }
+            invites.execute();
+            for (String inviteId : departed) {
+                this.inviteRevocationList.supersede(inviteId, now);
+            }
+            this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, AccessEvent.class).insert(events).execute();
+            this.occupancyService.record(this.journal.id() + ":" + batch.get(0).sequence() + "-" + batch.get(batch.size() - 1).sequence(), events);
+            this.todayInviteIndex.refreshAll(inviteIds);
+
+            try {
+                this.journal.flushed(batch.get(batch.size() - 1).sequence());
+            } catch (IOException exception) {
+                throw new UncheckedIOException("Couldn't checkpoint the gate event journal", exception);
+            }
+
+        });
+        this.batchSizes.record(batch.size());
+
+    }
+
+}
@@ -0,0 +1,178 @@
+package com.lsoria.qrsec.service.token;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.bson.types.ObjectId;
+
+/*
+    Set of invite ids that keeps ObjectIds as their 12 bytes (three ints) in open addressing arrays with linear probing,
+    about 13 bytes per id instead of a String plus a hash table node. Ids that are not ObjectIds go to a regular set.
+    Not thread safe, InviteRevocationList guards it with a read/write lock.
+ */
+final class CompactIdSet {
+
+    private static final byte EMPTY = 0;
+    private static final byte FULL = 1;
+    private static final byte REMOVED = 2;
+
+    private static final int MINIMUM_CAPACITY = 64;
+
+    private byte[] states;
+    private int[] words;
+    private int size;
+    private int used;
+
+    private final Set<String> otherIds = new HashSet<>();
+
+    CompactIdSet() {
+        allocate(MINIMUM_CAPACITY);
+    }
+
+    boolean contains(String id) {
+
+        if (!ObjectId.isValid(id)) {
+            return this.otherIds.contains(id);
+        }
+
+        return find(word(id, 0), word(id, 1), word(id, 2)) >= 0;
+
+    }
+
+    boolean add(String id) {
+
+        if (!ObjectId.isValid(id)) {
+            return this.otherIds.add(id);
+        }
+
+        int a = word(id, 0);
+        int b = word(id, 1);
+        int c = word(id, 2);
+        if (find(a, b, c) >= 0) {
+            return false;
+        }
+
+        if ((this.used + 1) * 4L >= this.states.length * 3L) {
+            allocateAndCopy();
+        }
+
+        int mask = this.states.length - 1;
+        int slot = hash(a, b, c) & mask;
+        while (this.states[slot] == FULL) {
+            slot = (slot + 1) & mask;
+        }
+        if (this.states[slot] == EMPTY) {
+            this.used++;
+        }
+        this.states[slot] = FULL;
+        this.words[slot * 3] = a;
+        this.words[slot * 3 + 1] = b;
+        this.words[slot * 3 + 2] = c;
+        this.size++;
+
+        return true;
+
+    }
+
+    boolean remove(String id) {
+
+        if (!ObjectId.isValid(id)) {
+            return this.otherIds.remove(id);
+        }
+
+        int slot = find(word(id, 0), word(id, 1), word(id, 2));
+        if (slot < 0) {
+            return false;
+        }
+
+        // The slot stays used so the probe sequences going through it are not cut
+        this.states[slot] = REMOVED;
+        this.size--;
+
+        return true;
+
+    }
+
+    int size() {
+
+        return this.size + this.otherIds.size();
+
+    }
+
+    private int find(int a, int b, int c) {
+
+        int mask = this.states.length - 1;
+        int slot = hash(a, b, c) & mask;
+        while (this.states[slot] != EMPTY) {
+            if (this.states[slot] == FULL
+                    && this.words[slot * 3] == a
+                    && this.words[slot * 3 + 1] == b
+                    && this.words[slot * 3 + 2] == c) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+
+    }
+
+    // Doubles the capacity when most slots hold ids, otherwise only drops the removed slots
+    private void allocateAndCopy() {
+
+        byte[] oldStates = this.states;
+        int[] oldWords = this.words;
+
+        int capacity = oldStates.length;
+        if (this.size * 2L >= capacity) {
+            capacity *= 2;
+        }
+        allocate(capacity);
+
+        int mask = capacity - 1;
+        for (int oldSlot = 0; oldSlot < oldStates.length; oldSlot++) {
+            if (oldStates[oldSlot] != FULL) {
+                continue;
+            }
+            int a = oldWords[oldSlot * 3];
+            int b = oldWords[oldSlot * 3 + 1];
+            int c = oldWords[oldSlot * 3 + 2];
+            int slot = hash(a, b, c) & mask;
+            while (this.states[slot] == FULL) {
+                slot = (slot + 1) & mask;
+            }
+            this.states[slot] = FULL;
+            this.words[slot * 3] = a;
+            this.words[slot * 3 + 1] = b;
+            this.words[slot * 3 + 2] = c;
+            this.used++;
+            this.size++;
+        }
+
+    }
+
+    private void allocate(int capacity) {
+
+        this.states = new byte[capacity];
+        this.words = new int[capacity * 3];
+        this.size = 0;
+        this.used = 0;
+
+    }
+
+    // The n-th group of 8 hex digits of an ObjectId, case insensitive
+    private static int word(String id, int index) {
+
+        return Integer.parseUnsignedInt(id, index * 8, index * 8 + 8, 16);
+
+    }
+
+    private static int hash(int a, int b, int c) {
+
+        int hash = a * 0x9E3779B1 ^ b * 0x85EBCA77 ^ c * 0xC2B2AE3D;
+
+        return hash ^ (hash >>> 16);
+
+    }
+
+}
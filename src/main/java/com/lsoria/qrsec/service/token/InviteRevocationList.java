@@ -0,0 +1,272 @@
+package com.lsoria.qrsec.service.token;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.lsoria.qrsec.domain.event.EntityChangedEvent;
+import com.lsoria.qrsec.domain.model.Invite;
+import com.lsoria.qrsec.repository.Queries;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+/*
+    Ids of the invites whose QR tokens must be rejected: disabled invites and deleted ones.
+    Deleted invites leave a tombstone in revoked_invites, otherwise their tokens would be accepted again
+    once the list is rebuilt from the invites collection at startup.
+    Also the tokensValidFrom of the invites that have one: a token whose version is older was issued before a change
+    of the schedule, departure or state and is superseded.
+    Checked on every scan, so ids are kept in a CompactIdSet behind a read/write lock: scans only share the read lock.
+    Changes made by other nodes only arrive through the change stream (qrsec.cache.change-streams.enabled), without
+    it a node learns about them at its next restart and keeps accepting tokens disabled or superseded elsewhere.
+ */
+@Slf4j
+@Component
+public class InviteRevocationList {
+
+    static final String TOMBSTONES = "revoked_invites";
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private CompactIdSet revokedIds = new CompactIdSet();
+    // Epoch millis (as the token versions) of tokensValidFrom by id
+    private Map<String, Long> validFrom = new HashMap<>();
+    // Revocations (true) and restorations (false) made while a rebuild reads MongoDB, replayed on the rebuilt set
+    private Map<String, Boolean> pendingChanges;
+    // Same for tokensValidFrom
+    private Map<String, Long> pendingValidFrom;
+
+    // Built without holding the lock and swapped in at the end, scans keep using the current set meanwhile
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+
+        Lock writeLock = this.lock.writeLock();
+        writeLock.lock();
+        try {
+            this.pendingChanges = new HashMap<>();
+            this.pendingValidFrom = new HashMap<>();
+        } finally {
+            writeLock.unlock();
+        }
+
+        CompactIdSet rebuilt = new CompactIdSet();
+        Map<String, Long> rebuiltValidFrom = new HashMap<>();
+        try {
+            Query disabled = new Query(Criteria.where("enabled").is(false));
+            disabled.fields().include("_id");
+            mongoTemplate.getCollection(mongoTemplate.getCollectionName(Invite.class))
+                    .find(disabled.getQueryObject())
+                    .projection(disabled.getFieldsObject())
+                    .forEach(document -> rebuilt.add(id(document)));
+            mongoTemplate.getCollection(TOMBSTONES)
+                    .find()
+                    .forEach(document -> rebuilt.add(id(document)));
+            mongoTemplate.getCollection(mongoTemplate.getCollectionName(Invite.class))
+                    .find(new Document("tokens_valid_from", new Document("$ne", null)))
+                    .projection(new Document("tokens_valid_from", 1))
+                    .forEach(document -> rebuiltValidFrom.put(id(document), toMillis(localTime(document.getDate("tokens_valid_from")))));
+        } catch (RuntimeException exception) {
+            writeLock.lock();
+            try {
+                this.pendingChanges = null;
+                this.pendingValidFrom = null;
+            } finally {
+                writeLock.unlock();
+            }
+            throw exception;
+        }
+
+        writeLock.lock();
+        try {
+            for (Map.Entry<String, Boolean> change : this.pendingChanges.entrySet()) {
+                apply(rebuilt, change.getKey(), change.getValue());
+            }
+            for (Map.Entry<String, Long> change : this.pendingValidFrom.entrySet()) {
+                rebuiltValidFrom.merge(change.getKey(), change.getValue(), Math::max);
+            }
+            this.pendingChanges = null;
+            this.pendingValidFrom = null;
+            this.revokedIds = rebuilt;
+            this.validFrom = rebuiltValidFrom;
+        } finally {
+            writeLock.unlock();
+        }
+
+        log.info("Invite revocation list rebuilt with {} ids and {} token versions", size(), rebuiltValidFrom.size());
+
+    }
+
+    public boolean isRevoked(String id) {
+
+        Lock readLock = this.lock.readLock();
+        readLock.lock();
+        try {
+            return this.revokedIds.contains(id);
+        } finally {
+            readLock.unlock();
+        }
+
+    }
+
+    // The token of this version was issued before the last change of the invite that affects the gate checks
+    public boolean isSuperseded(String id, LocalDateTime version) {
+
+        Lock readLock = this.lock.readLock();
+        readLock.lock();
+        try {
+            Long validFrom = this.validFrom.get(id);
+            return validFrom != null && (version == null || toMillis(version) < validFrom);
+        } finally {
+            readLock.unlock();
+        }
+
+    }
+
+    // Tokens issued before validFrom are rejected from now on, an older validFrom doesn't move it back
+    public void supersede(String id, LocalDateTime validFrom) {
+
+        long millis = toMillis(validFrom);
+        Lock writeLock = this.lock.writeLock();
+        writeLock.lock();
+        try {
+            this.validFrom.merge(id, millis, Math::max);
+            if (this.pendingValidFrom != null) {
+                this.pendingValidFrom.merge(id, millis, Math::max);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+    }
+
+    public void revoke(String id) {
+
+        change(id, true);
+
+    }
+
+    public void restore(String id) {
+
+        change(id, false);
+
+    }
+
+    // The invite is gone, remember it so a rebuild still rejects its tokens
+    public void revokeDeleted(String id) {
+
+        revoke(id);
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is(id)), new Update().setOnInsert("_id", id), TOMBSTONES);
+
+    }
+
+    public int size() {
+
+        Lock readLock = this.lock.readLock();
+        readLock.lock();
+        try {
+            return this.revokedIds.size();
+        } finally {
+            readLock.unlock();
+        }
+
+    }
+
+    private void change(String id, boolean revoked) {
+
+        Lock writeLock = this.lock.writeLock();
+        writeLock.lock();
+        try {
+            apply(this.revokedIds, id, revoked);
+            if (this.pendingChanges != null) {
+                this.pendingChanges.put(id, revoked);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+    }
+
+    private static void apply(CompactIdSet revokedIds, String id, boolean revoked) {
+
+        if (revoked) {
+            revokedIds.add(id);
+        } else {
+            revokedIds.remove(id);
+        }
+
+    }
+
+    // Changes made by any node: deleted invites were tombstoned by that node, the others are revoked as they are stored
+    @EventListener
+    public void onEntityChanged(EntityChangedEvent event) {
+
+        if (event.isEverything()) {
+            rebuild();
+            return;
+        }
+        if (!event.concerns("invites")) {
+            return;
+        }
+        if (event.deleted()) {
+            revoke(event.id());
+            return;
+        }
+
+        Document invite = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Invite.class))
+                .find(new Document("_id", Queries.storedId(event.id())))
+                .projection(new Document("enabled", 1).append("tokens_valid_from", 1))
+                .first();
+        if (invite == null) {
+            return;
+        }
+        if (Boolean.TRUE.equals(invite.getBoolean("enabled"))) {
+            restore(event.id());
+        } else {
+            revoke(event.id());
+        }
+        Date validFrom = invite.getDate("tokens_valid_from");
+        if (validFrom != null) {
+            supersede(event.id(), localTime(validFrom));
+        }
+
+    }
+
+    private static String id(Document document) {
+
+        return document.get("_id").toString();
+
+    }
+
+    // LocalDateTimes are stored as dates in the server's zone
+    private static LocalDateTime localTime(Date date) {
+
+        return LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault());
+
+    }
+
+    // Same clock as the token versions: the server's LocalDateTime taken as UTC
+    private static long toMillis(LocalDateTime time) {
+
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.lsoria.qrsec.service.token;
+
+import java.time.LocalDateTime;
+
+import com.lsoria.qrsec.domain.model.InviteSchedule;
+
+/*
+    What a verified QR token says about its invite, as it was when the token was issued.
+    - version: the invite's lastModifiedAt, a token issued before a later change carries an older version and is
+      rejected once it is older than the invite's tokensValidFrom
+    - departureTime: null if the guest had not left yet
+ */
+public record InviteToken(
+        String id,
+        LocalDateTime version,
+        LocalDateTime createdAt,
+        LocalDateTime departureTime,
+        InviteSchedule schedule
+) {
+}
@@ -0,0 +1,179 @@
+package com.lsoria.qrsec.service.token;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.Optional;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.lsoria.qrsec.domain.model.Invite;
+import com.lsoria.qrsec.domain.model.InviteSchedule;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/*
+    Issues and verifies the QR tokens of the invites: base64url(payload) "." base64url(HMAC-SHA256(payload)).
+    The payload is binary and holds everything the gate checks, so a scan needs no database read:
+    format | id | version (lastModifiedAt) | createdAt | departureTime | day mask | all day | hour ranges (minute of day)
+    Times are epoch millis of the server's LocalDateTimes taken as UTC, Long.MIN_VALUE when missing.
+    Enabled is not in the token, a disabled invite is rejected by the InviteRevocationList, as a token whose version
+    is older than the last edit, departure, enable or disable of its invite.
+ */
+@Slf4j
+@Service
+public class InviteTokenService {
+
+    // The token holds the number of hour ranges in one unsigned byte
+    public static final int MAX_RANGES = 255;
+
+    private static final byte FORMAT = 1;
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final Mac prototype;
+
+    public InviteTokenService(@Value("${qrsec.invites.token.secret:}") String secret) throws GeneralSecurityException {
+
+        byte[] key;
+        if (secret == null || secret.isBlank()) {
+            key = new byte[32];
+            new SecureRandom().nextBytes(key);
+            log.warn("qrsec.invites.token.secret is not set, using a random key: QR tokens will not survive a restart or be shared between nodes");
+        } else {
+            key = secret.getBytes(StandardCharsets.UTF_8);
+        }
+
+        this.prototype = Mac.getInstance(ALGORITHM);
+        this.prototype.init(new SecretKeySpec(key, ALGORITHM));
+
+    }
+
+    public String issue(Invite invite) {
+
+        byte[] id = invite.getId().getBytes(StandardCharsets.UTF_8);
+        InviteSchedule schedule = invite.getSchedule();
+        if (schedule.getRangeCount() > MAX_RANGES) {
+            throw new IllegalArgumentException("Invite " + invite.getId() + " has more than " + MAX_RANGES + " hour ranges");
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(1 + 1 + id.length + 8 * 3 + 3 + schedule.getRangeCount() * 4);
+        payload.put(FORMAT);
+        payload.put((byte) id.length);
+        payload.put(id);
+        payload.putLong(toMillis(invite.getLastModifiedAt()));
+        payload.putLong(toMillis(invite.getCreatedAt()));
+        payload.putLong(toMillis(invite.getDepartureTime()));
+        payload.put((byte) schedule.getDayMask());
+        payload.put((byte) (schedule.isAllDay() ? 1 : 0));
+        payload.put((byte) schedule.getRangeCount());
+        for (int i = 0; i < schedule.getRangeCount(); i++) {
+            payload.putShort((short) schedule.getStartMinute(i));
+            payload.putShort((short) schedule.getEndMinute(i));
+        }
+
+        byte[] bytes = payload.array();
+
+        return ENCODER.encodeToString(bytes) + "." + ENCODER.encodeToString(sign(bytes));
+
+    }
+
+    // Empty if the token is malformed or its signature does not match
+    public Optional<InviteToken> verify(String token) {
+
+        if (token == null) {
+            return Optional.empty();
+        }
+
+        int separator = token.indexOf('.');
+        if (separator <= 0 || separator != token.lastIndexOf('.')) {
+            return Optional.empty();
+        }
+
+        try {
+
+            byte[] bytes = DECODER.decode(token.substring(0, separator));
+            byte[] signature = DECODER.decode(token.substring(separator + 1));
+            if (!MessageDigest.isEqual(signature, sign(bytes))) {
+                return Optional.empty();
+            }
+
+            return Optional.of(read(ByteBuffer.wrap(bytes)));
+
+        } catch (IllegalArgumentException | BufferUnderflowException exception) {
+
+            return Optional.empty();
+
+        }
+
+    }
+
+    private InviteToken read(ByteBuffer payload) {
+
+        if (payload.get() != FORMAT) {
+            throw new IllegalArgumentException("Unknown token format");
+        }
+
+        byte[] id = new byte[Byte.toUnsignedInt(payload.get())];
+        payload.get(id);
+        LocalDateTime version = fromMillis(payload.getLong());
+        LocalDateTime createdAt = fromMillis(payload.getLong());
+        LocalDateTime departureTime = fromMillis(payload.getLong());
+        int dayMask = Byte.toUnsignedInt(payload.get());
+        boolean allDay = payload.get() == 1;
+        int rangeCount = Byte.toUnsignedInt(payload.get());
+        int[] startMinutes = new int[rangeCount];
+        int[] endMinutes = new int[rangeCount];
+        for (int i = 0; i < rangeCount; i++) {
+            startMinutes[i] = payload.getShort();
+            endMinutes[i] = payload.getShort();
+        }
+
+        InviteSchedule schedule = new InviteSchedule(dayMask, startMinutes, endMinutes, allDay);
+
+        return new InviteToken(new String(id, StandardCharsets.UTF_8), version, createdAt, departureTime, schedule);
+
+    }
+
+    private byte[] sign(byte[] payload) {
+
+        try {
+
+            // An initialized Mac is not thread safe, the clone is cheaper than a new instance
+            Mac mac = (Mac) this.prototype.clone();
+
+            return mac.doFinal(payload);
+
+        } catch (CloneNotSupportedException exception) {
+
+            throw new IllegalStateException(ALGORITHM + " can't be cloned", exception);
+
+        }
+
+    }
+
+    private static long toMillis(LocalDateTime time) {
+
+        return time == null ? NO_TIME : time.toInstant(ZoneOffset.UTC).toEpochMilli();
+
+    }
+
+    private static LocalDateTime fromMillis(long millis) {
+
+        return millis == NO_TIME ? null : LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000), (int) Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+
+    }
+
+}
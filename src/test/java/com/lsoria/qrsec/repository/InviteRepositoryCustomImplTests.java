@@ -0,0 +1,123 @@
+package com.lsoria.qrsec.repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import com.lsoria.qrsec.domain.model.Invite;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class InviteRepositoryCustomImplTests {
+
+    private static final String ID = "invite";
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2000, 1, 1, 12, 0);
+
+    @Mock
+    MongoTemplate mongoTemplate;
+
+    @InjectMocks
+    InviteRepositoryCustomImpl inviteRepository;
+
+    @Test
+    void compareAndSetMatchesTheExpectedVersion() {
+
+        Invite stored = new Invite();
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Invite.class))).thenReturn(stored);
+
+        Optional<Invite> updated = inviteRepository.compareAndSet(ID, 3L, new Update().set("description", "edited"));
+
+        assertSame(stored, updated.orElseThrow());
+        Document query = captureQuery().getQueryObject();
+        assertEquals(ID, query.get("id"));
+        assertEquals(3L, query.get("version"));
+        assertIncrementsVersion(captureUpdate(), "description");
+
+    }
+
+    @Test
+    void compareAndSetMatchesInvitesWithoutVersion() {
+
+        inviteRepository.compareAndSet(ID, null, new Update().set("description", "edited"));
+
+        Document query = captureQuery().getQueryObject();
+        assertTrue(query.containsKey("version"));
+        assertEquals(null, query.get("version"));
+
+    }
+
+    @Test
+    void compareAndSetIsEmptyWhenTheVersionMoved() {
+
+        // findAndModify finds nothing when another write moved the version since the Invite was read
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Invite.class))).thenReturn(null);
+
+        assertTrue(inviteRepository.compareAndSet(ID, 3L, new Update().set("description", "edited")).isEmpty());
+
+    }
+
+    @Test
+    void applyMatchesAnyVersion() {
+
+        Invite stored = new Invite();
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Invite.class))).thenReturn(stored);
+
+        Optional<Invite> updated = inviteRepository.apply(ID, new Update().set("arrivalTime", NOW));
+
+        assertSame(stored, updated.orElseThrow());
+        Document query = captureQuery().getQueryObject();
+        assertEquals(ID, query.get("id"));
+        assertFalse(query.containsKey("version"));
+        assertIncrementsVersion(captureUpdate(), "arrivalTime");
+
+    }
+
+    private Query captureQuery() {
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findAndModify(query.capture(), any(Update.class), any(FindAndModifyOptions.class), eq(Invite.class));
+
+        return query.getValue();
+
+    }
+
+    private Update captureUpdate() {
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        ArgumentCaptor<FindAndModifyOptions> options = ArgumentCaptor.forClass(FindAndModifyOptions.class);
+        verify(mongoTemplate).findAndModify(any(Query.class), update.capture(), options.capture(), eq(Invite.class));
+        assertTrue(options.getValue().isReturnNew());
+
+        return update.getValue();
+
+    }
+
+    private static void assertIncrementsVersion(Update update, String field) {
+
+        Document updateObject = update.getUpdateObject();
+        assertEquals(1, ((Document) updateObject.get("$inc")).get("version"));
+        assertTrue(((Document) updateObject.get("$set")).containsKey(field));
+
+    }
+
+}
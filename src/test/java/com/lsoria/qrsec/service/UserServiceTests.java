@@ -0,0 +1,125 @@
+package com.lsoria.qrsec.service;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+
+import com.lsoria.qrsec.domain.model.Role;
+import com.lsoria.qrsec.domain.model.User;
+import com.lsoria.qrsec.repository.UserRepository;
+import com.lsoria.qrsec.service.cache.RequestUserCache;
+import com.lsoria.qrsec.service.cache.UserCache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UserServiceTests {
+
+    private static final String EMAIL = "guard@qrsec.com";
+
+    @Mock
+    UserRepository userRepository;
+
+    @Spy
+    RequestUserCache requestUserCache = new RequestUserCache();
+
+    @Spy
+    UserCache userCache = new UserCache(100, Duration.ofMinutes(5));
+
+    @InjectMocks
+    UserService userService;
+
+    @BeforeEach
+    void bindRequest() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+    }
+
+    @AfterEach
+    void unbindRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void resolvesUserOncePerRequest() throws Exception {
+
+        User guard = new User(EMAIL, Set.of(new Role(Role.GUARD)));
+        when(userRepository.findByUsername(EMAIL)).thenReturn(Optional.of(guard));
+
+        // Same sequence of calls InviteController.validateInvite makes
+        assertTrue(userService.findByUsername(EMAIL).isPresent());
+        assertTrue(userService.userIsAuthorized(EMAIL, new Role(Role.GUARD)));
+        assertTrue(userService.findByUsername(EMAIL).isPresent());
+
+        verify(userRepository, times(1)).findByUsername(EMAIL);
+        assertEquals(1, requestUserCache.getLookupsForCurrentRequest());
+
+    }
+
+    @Test
+    void resolvesUserAgainAfterUpdate() {
+
+        User owner = new User(EMAIL, Set.of(new Role(Role.OWNER)));
+        when(userRepository.findByUsername(EMAIL)).thenReturn(Optional.of(owner));
+        when(userRepository.save(owner)).thenReturn(owner);
+
+        userService.findByUsername(EMAIL);
+        userService.update(owner, new User(EMAIL, Set.of()));
+        userService.findByUsername(EMAIL);
+
+        verify(userRepository, times(2)).findByUsername(EMAIL);
+        assertEquals(2, requestUserCache.getLookupsForCurrentRequest());
+
+    }
+
+    @Test
+    void servesUserFromCacheAcrossRequests() {
+
+        User guard = new User(EMAIL, Set.of(new Role(Role.GUARD)));
+        when(userRepository.findByUsername(EMAIL)).thenReturn(Optional.of(guard));
+
+        userService.findByUsername(EMAIL);
+        unbindRequest();
+        bindRequest();
+        userService.findByUsername(EMAIL);
+
+        verify(userRepository, times(1)).findByUsername(EMAIL);
+        assertEquals(1, userCache.stats().hitCount());
+
+    }
+
+    @Test
+    void disabledUserIsReloaded() throws Exception {
+
+        User owner = new User(EMAIL, Set.of(new Role(Role.OWNER)));
+        owner.setId("5f15a5256d2a2a1ac0e4d999");
+        owner.setEnabled(true);
+        when(userRepository.findByUsername(EMAIL)).thenReturn(Optional.of(owner));
+        when(userRepository.findById(owner.getId())).thenReturn(Optional.of(owner));
+
+        userService.findByUsername(EMAIL);
+        userService.delete(owner.getId());
+        unbindRequest();
+        bindRequest();
+        userService.findByUsername(EMAIL);
+
+        verify(userRepository, times(2)).findByUsername(EMAIL);
+
+    }
+
+}
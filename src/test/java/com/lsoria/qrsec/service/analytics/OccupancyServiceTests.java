@@ -0,0 +1,149 @@
+package com.lsoria.qrsec.service.analytics;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import com.lsoria.qrsec.domain.http.Occupancy;
+import com.lsoria.qrsec.domain.model.AccessEvent;
+import com.lsoria.qrsec.domain.model.OccupancyRollup;
+import com.lsoria.qrsec.service.AccessEventService;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OccupancyServiceTests {
+
+    private static final LocalDateTime DAY = LocalDateTime.of(2000, 1, 3, 0, 0);
+
+    @Mock
+    MongoTemplate mongoTemplate;
+
+    @Mock
+    BulkOperations bulkOperations;
+
+    @Spy
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    OccupancyService occupancyService;
+
+    @BeforeEach
+    void configure() {
+
+        occupancyService.maxPeriods = 2208;
+
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void startsFromTheDaysBeforeAndTheHoursOfTheFirstDay() {
+
+        LocalDateTime from = DAY.withHour(10).withMinute(30);
+        when(mongoTemplate.find(any(Query.class), eq(OccupancyRollup.class)))
+                .thenReturn(List.of(new OccupancyRollup("hour:" + DAY.withHour(11), OccupancyRollup.HOUR, DAY.withHour(11), 3, 1)));
+        when(mongoTemplate.aggregate(any(TypedAggregation.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(List.of(new Document("arrivals", 10L).append("departures", 4L)), new Document()));
+
+        List<Occupancy> occupancy = occupancyService.range(OccupancyRollup.HOUR, from, DAY.withHour(12).withMinute(10));
+
+        // 10 arrivals and 4 departures before 10:00, then the range's own hours
+        assertEquals(List.of(
+                new Occupancy(DAY.withHour(10), 0, 0, 6),
+                new Occupancy(DAY.withHour(11), 3, 1, 8),
+                new Occupancy(DAY.withHour(12), 0, 0, 8)
+        ), occupancy);
+
+        ArgumentCaptor<TypedAggregation> aggregation = ArgumentCaptor.forClass(TypedAggregation.class);
+        verify(mongoTemplate).aggregate(aggregation.capture(), eq(Document.class));
+        Document match = aggregation.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT).get(0);
+        Document expected = new Criteria().orOperator(
+                Criteria.where("granularity").is(OccupancyRollup.DAY).and("start").lt(DAY),
+                Criteria.where("granularity").is(OccupancyRollup.HOUR).and("start").gte(DAY).lt(DAY.withHour(10))
+        ).getCriteriaObject();
+        assertEquals(new Document("$match", expected), match);
+
+    }
+
+    @Test
+    void startsFromZeroWithoutRollupsBefore() {
+
+        when(mongoTemplate.find(any(Query.class), eq(OccupancyRollup.class))).thenReturn(List.of());
+        when(mongoTemplate.aggregate(any(TypedAggregation.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(List.of(), new Document()));
+
+        List<Occupancy> occupancy = occupancyService.range(OccupancyRollup.DAY, DAY, DAY);
+
+        assertEquals(List.of(new Occupancy(DAY, 0, 0, 0)), occupancy);
+
+    }
+
+    @Test
+    void countsABatchOncePerPeriod() {
+
+        AccessEvent arrival = AccessEventService.event("invite", "arrival", DAY.withHour(10), "guard", null);
+
+        List<OccupancyService.Increment> increments = OccupancyService.increments("journal:1-2", List.of(arrival));
+
+        // The hour and the day, each skipped once it holds the batch, which it records in the same update
+        assertEquals(2, increments.size());
+        for (OccupancyService.Increment increment : increments) {
+            assertEquals(new Document("$ne", "journal:1-2"), increment.query().getQueryObject().get("batches"));
+            assertEquals(1L, ((Document) increment.update().getUpdateObject().get("$inc")).get("arrivals"));
+            assertTrue(((Document) increment.update().getUpdateObject().get("$push")).containsKey("batches"));
+        }
+
+    }
+
+    @Test
+    void skipsThePeriodsARetriedBatchWasCountedIn() {
+
+        AccessEvent arrival = AccessEventService.event("invite", "arrival", DAY.withHour(10), "guard", null);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, OccupancyRollup.class)).thenReturn(bulkOperations);
+        // The day already counted the batch: its upsert doesn't match and inserting its id again fails
+        BulkWriteError duplicate = new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), 1);
+        when(bulkOperations.execute()).thenThrow(new BulkOperationException("duplicate key", new MongoBulkWriteException(
+                BulkWriteResult.unacknowledged(), List.of(duplicate), null, new ServerAddress(), Set.of())));
+        when(mongoTemplate.upsert(any(Query.class), any(Update.class), eq(OccupancyRollup.class))).thenThrow(new DuplicateKeyException("duplicate key"));
+
+        occupancyService.record("journal:1-2", List.of(arrival));
+
+        verify(mongoTemplate, times(1)).upsert(any(Query.class), any(Update.class), eq(OccupancyRollup.class));
+        assertEquals(1, meterRegistry.counter("qrsec.occupancy.duplicate-increments").count());
+
+    }
+
+}
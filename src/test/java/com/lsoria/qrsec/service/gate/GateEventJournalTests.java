@@ -0,0 +1,65 @@
+package com.lsoria.qrsec.service.gate;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GateEventJournalTests {
+
+    private static final int GUARDS = 16;
+    private static final int SCANS = 100;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void handsOverEverySyncedEventOnceAndInOrder() throws Exception {
+
+        Path file = this.directory.resolve("gate-events.journal");
+        List<GateEvent> durable = new ArrayList<>();
+        try (GateEventJournal journal = new GateEventJournal(file, this.objectMapper)) {
+
+            ExecutorService guards = Executors.newFixedThreadPool(GUARDS);
+            List<Future<?>> scans = new ArrayList<>();
+            for (int guard = 0; guard < GUARDS; guard++) {
+                String name = "guard-" + guard;
+                scans.add(guards.submit(() -> {
+                    for (int scan = 0; scan < SCANS; scan++) {
+                        GateEvent event = journal.append("invite", "arrival", LocalDateTime.of(2000, 1, 1, 12, 0), name, null);
+                        // Called by one syncing thread at a time
+                        journal.sync(event.sequence(), durable::addAll);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> scan : scans) {
+                scan.get();
+            }
+            guards.shutdown();
+
+        }
+
+        assertEquals(GUARDS * SCANS, durable.size());
+        for (int i = 0; i < durable.size(); i++) {
+            assertEquals(i + 1, durable.get(i).sequence());
+        }
+        try (GateEventJournal reopened = new GateEventJournal(file, this.objectMapper)) {
+            assertEquals(GUARDS * SCANS, reopened.pending().size());
+        }
+
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.lsoria.qrsec.service.token;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import com.lsoria.qrsec.domain.model.Invite;
+import com.lsoria.qrsec.domain.model.InviteSchedule;
+import com.lsoria.qrsec.service.InviteService;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InviteTokenServiceTests {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2000, 1, 1, 12, 0);
+
+    private final InviteTokenService inviteTokenService;
+
+    InviteTokenServiceTests() throws Exception {
+
+        this.inviteTokenService = new InviteTokenService("secret");
+
+    }
+
+    @Test
+    void roundTripsTheMaximumNumberOfRanges() {
+
+        Invite invite = invite(InviteTokenService.MAX_RANGES);
+
+        InviteToken token = inviteTokenService.verify(inviteTokenService.issue(invite)).orElseThrow();
+
+        InviteSchedule expected = invite.getSchedule();
+        InviteSchedule schedule = token.schedule();
+        assertEquals(invite.getId(), token.id());
+        assertEquals(NOW, token.version());
+        assertEquals(expected.getDayMask(), schedule.getDayMask());
+        assertFalse(schedule.isAllDay());
+        assertEquals(InviteTokenService.MAX_RANGES, schedule.getRangeCount());
+        for (int i = 0; i < expected.getRangeCount(); i++) {
+            assertEquals(expected.getStartMinute(i), schedule.getStartMinute(i));
+            assertEquals(expected.getEndMinute(i), schedule.getEndMinute(i));
+        }
+
+    }
+
+    @Test
+    void rejectsMoreRangesThanTheTokenHolds() {
+
+        Invite invite = invite(InviteTokenService.MAX_RANGES + 1);
+
+        assertThrows(IllegalArgumentException.class, () -> inviteTokenService.issue(invite));
+        assertTrue(new InviteService().invalidReason(invite).isPresent());
+        assertTrue(new InviteService().invalidReason(invite(InviteTokenService.MAX_RANGES)).isEmpty());
+
+    }
+
+    // Ranges of two minutes every five minutes from midnight
+    private static Invite invite(int ranges) {
+
+        List<List<String>> hours = new ArrayList<>();
+        for (int i = 0; i < ranges; i++) {
+            hours.add(List.of(time(i * 5), time(i * 5 + 2)));
+        }
+
+        Invite invite = new Invite();
+        invite.setId("65a1b2c3d4e5f60718293a4b");
+        invite.setLastModifiedAt(NOW);
+        invite.setCreatedAt(NOW);
+        invite.setDays(Set.of("1", "3"));
+        invite.setHours(hours);
+
+        return invite;
+
+    }
+
+    private static String time(int minuteOfDay) {
+
+        return String.format("%02d:%02d", minuteOfDay / 60, minuteOfDay % 60);
+
+    }
+
+}